@@ -0,0 +1,57 @@
+package com.igerixx.Benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Runs {@link ParserBenchmark} with the GC profiler and prints events per
+ * second, MB per second and allocated bytes per event for every parser and
+ * document shape. Usual JMH options can be passed, e.g. {@code -p sizeMb=64}.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(ParserBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.printf("%-18s %-10s %16s %10s %12s%n", "Shape", "Parser", "Events/s", "MB/s", "B/event");
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            String parser = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            Map<String, Result> secondary = result.getSecondaryResults();
+
+            double operations = result.getPrimaryResult().getScore();
+            double events = score(secondary, "events");
+            double bytes = score(secondary, "bytes");
+            double allocatedPerOperation = score(secondary, "gc.alloc.rate.norm");
+            double eventsPerOperation = events / operations;
+
+            System.out.printf("%-18s %-10s %16.0f %10.1f %12.2f%n",
+                    result.getParams().getParam("shape"), parser,
+                    events, bytes / (1024 * 1024), allocatedPerOperation / eventsPerOperation);
+        }
+    }
+
+    private static double score(Map<String, Result> results, String name) {
+        // Profiler results may carry a prefix depending on the JMH version
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            if (entry.getKey().endsWith(name)) return entry.getValue().getScore();
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,110 @@
+package com.igerixx.Benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic documents of different shapes. Every shape except
+ * {@link #SMALL_DOCUMENTS} produces one document of about the requested
+ * size, {@link #SMALL_DOCUMENTS} produces many messages of a few hundred
+ * bytes that add up to it.
+ */
+public enum DocumentShape {
+    DEEP_NESTING {
+        @Override
+        void append(StringBuilder sb, Random random, int record) {
+            int depth = 32 + random.nextInt(96);
+            for (int level = 0; level < depth; level++)
+                sb.append("<level").append(level).append('>');
+            sb.append("leaf ").append(record);
+            for (int level = depth - 1; level >= 0; level--)
+                sb.append("</level").append(level).append('>');
+            sb.append('\n');
+        }
+    },
+    ATTRIBUTE_HEAVY {
+        @Override
+        void append(StringBuilder sb, Random random, int record) {
+            int count = 10 + random.nextInt(21);
+            sb.append("<record");
+            for (int attribute = 0; attribute < count; attribute++) {
+                sb.append(" attribute").append(attribute).append("=\"")
+                        .append(word(random)).append(random.nextInt(100000)).append('"');
+            }
+            sb.append("/>\n");
+        }
+    },
+    LARGE_TEXT {
+        @Override
+        void append(StringBuilder sb, Random random, int record) {
+            sb.append("<description>");
+            // Prose with some non-ASCII letters followed by a base64 blob
+            for (int word = 0; word < 400; word++)
+                sb.append(word(random)).append(word % 17 == 0 ? " déjà vu " : " ");
+            for (int i = 0; i < 3000; i++)
+                sb.append(BASE64.charAt(random.nextInt(BASE64.length())));
+            sb.append("</description>\n");
+        }
+    },
+    ENTITY_DENSE {
+        @Override
+        void append(StringBuilder sb, Random random, int record) {
+            sb.append("<p>");
+            for (int i = 0; i < 20; i++) {
+                sb.append(word(random)).append(' ')
+                        .append(ENTITIES[random.nextInt(ENTITIES.length)]).append(' ');
+            }
+            sb.append("</p>\n");
+        }
+    },
+    SMALL_DOCUMENTS {
+        @Override
+        void append(StringBuilder sb, Random random, int record) {
+            sb.append("<message id=\"").append(record).append("\" type=\"").append(word(random)).append("\">")
+                    .append("<header><from>").append(word(random)).append("</from><to>")
+                    .append(word(random)).append("</to></header><body>");
+            for (int word = 0; word < 30; word++)
+                sb.append(word(random)).append(' ');
+            sb.append("</body></message>");
+        }
+    };
+
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final String[] ENTITIES = {"&amp;", "&lt;", "&gt;", "&quot;", "&apos;", "&#65;", "&#x42;"};
+    private static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur",
+            "adipiscing", "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "labore"};
+
+    abstract void append(StringBuilder sb, Random random, int record);
+
+    public List<byte[]> generate(long targetBytes, long seed) {
+        Random random = new Random(seed);
+        List<byte[]> documents = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+
+        if (this == SMALL_DOCUMENTS) {
+            long size = 0;
+            for (int record = 0; size < targetBytes; record++) {
+                sb.setLength(0);
+                sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                append(sb, random, record);
+                byte[] document = sb.toString().getBytes(StandardCharsets.UTF_8);
+                documents.add(document);
+                size += document.length;
+            }
+            return documents;
+        }
+
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root>\n");
+        for (int record = 0; sb.length() < targetBytes; record++)
+            append(sb, random, record);
+        sb.append("</root>\n");
+        documents.add(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return documents;
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+}
@@ -0,0 +1,165 @@
+package com.igerixx.Benchmarks;
+
+import com.igerixx.Reader.XMLReader;
+import com.igerixx.Reader.XMLReaderConstants;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the same documents with {@link XMLReader} and with the JDK's
+ * {@link XMLStreamReader}, touching element names, attribute values and
+ * text the way a typical consumer does.
+ * <p>
+ * Single large documents are written to a temporary file and every parser
+ * opens it through its own file entry point, small documents are parsed
+ * from memory. The "events" and "bytes" counters give events per second and
+ * bytes per second, {@link BenchmarkRunner} turns them into a summary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g", "--add-modules", "jdk.incubator.vector"})
+public class ParserBenchmark {
+    @Param({"DEEP_NESTING", "ATTRIBUTE_HEAVY", "LARGE_TEXT", "ENTITY_DENSE", "SMALL_DOCUMENTS"})
+    public DocumentShape shape;
+
+    @Param({"8"})
+    public int sizeMb;
+
+    private List<byte[]> documents;
+    private Path file;
+    private long totalBytes;
+    private XMLInputFactory factory;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long events;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        documents = shape.generate(sizeMb * 1024L * 1024L, 42);
+        totalBytes = 0;
+        for (byte[] document : documents) totalBytes += document.length;
+
+        if (documents.size() == 1) {
+            file = Files.createTempFile("benchmark-" + shape, ".xml");
+            Files.write(file, documents.get(0));
+        }
+
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (file != null) Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void xmlReader(Counters counters, Blackhole blackhole) throws IOException {
+        if (file != null) {
+            try (XMLReader reader = new XMLReader(file)) {
+                counters.events += consume(reader, blackhole);
+            }
+        } else {
+            for (byte[] document : documents) {
+                try (XMLReader reader = new XMLReader(new ByteArrayInputStream(document))) {
+                    counters.events += consume(reader, blackhole);
+                }
+            }
+        }
+        counters.bytes += totalBytes;
+    }
+
+    @Benchmark
+    public void jdkStax(Counters counters, Blackhole blackhole) throws IOException, XMLStreamException {
+        if (file != null) {
+            try (InputStream is = Files.newInputStream(file)) {
+                counters.events += consume(factory.createXMLStreamReader(is), blackhole);
+            }
+        } else {
+            for (byte[] document : documents)
+                counters.events += consume(factory.createXMLStreamReader(new ByteArrayInputStream(document)), blackhole);
+        }
+        counters.bytes += totalBytes;
+    }
+
+    private static long consume(XMLReader reader, Blackhole blackhole) throws IOException {
+        long events = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            events++;
+            switch (event) {
+                case XMLReaderConstants.START_ELEMENT -> {
+                    blackhole.consume(reader.getLocalName());
+                    for (int i = 0; i < reader.getAttributeCount(); i++)
+                        blackhole.consume(reader.getAttributeValue(i));
+                }
+                case XMLReaderConstants.CHARACTERS, XMLReaderConstants.CDATA -> {
+                    blackhole.consume(reader.getTextCharacters());
+                    blackhole.consume(reader.getTextLength());
+                }
+            }
+        }
+        return events;
+    }
+
+    private static long consume(XMLStreamReader reader, Blackhole blackhole) throws XMLStreamException {
+        long events = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            events++;
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    blackhole.consume(reader.getLocalName());
+                    for (int i = 0; i < reader.getAttributeCount(); i++)
+                        blackhole.consume(reader.getAttributeValue(i));
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                    blackhole.consume(reader.getTextCharacters());
+                    blackhole.consume(reader.getTextLength());
+                }
+            }
+        }
+        reader.close();
+        return events;
+    }
+}
@@ -6,6 +6,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Example {
@@ -23,6 +24,7 @@ public class Example {
         System.out.printf("Attribute name: %s\n", attrName);
         System.out.printf("Attribute value: %s\n", attrValue);
         System.out.printf("Text: %s\n", text);
+        System.out.printf("Text by path: %s\n", findTextByPath("/main/" + tagName, filename));
     }
 
     public static List<XMLAttribute> findAttributesByTag(String tagName, String filename) throws IOException {
@@ -30,12 +32,13 @@ public class Example {
             XMLReader reader = new XMLReader(is);
             reader.trimText(true);
             reader.setIgnoreComments(true);
+            int tagId = reader.getSymbolTable().intern(tagName);
 
             while (reader.hasNext()) {
                 int event = reader.next();
 
                 if (event == XMLReaderConstants.START_ELEMENT
-                        && reader.getLocalName().equals(tagName)) {
+                        && reader.getNameId() == tagId) {
                     return reader.getAttributesList();
                 }
             }
@@ -53,6 +56,7 @@ public class Example {
             XMLReader reader = new XMLReader(is);
             reader.trimText(true);
             reader.setIgnoreComments(true);
+            int tagId = reader.getSymbolTable().intern(tagName);
 
             StringBuilder stringBuilder = new StringBuilder();
             boolean inTag = false;
@@ -61,7 +65,7 @@ public class Example {
                 int event = reader.next();
 
                 if (event == XMLReaderConstants.START_ELEMENT
-                        && reader.getLocalName().equals(tagName)) {
+                        && reader.getNameId() == tagId) {
                     inTag = true;
                 }
 
@@ -70,7 +74,7 @@ public class Example {
                         stringBuilder.append(reader.getText()).append(" ");
 
                     if (event == XMLReaderConstants.END_ELEMENT
-                        && reader.getLocalName().equals(tagName)) {
+                        && reader.getNameId() == tagId) {
                         return stringBuilder.toString();
                     }
                 }
@@ -83,4 +87,19 @@ public class Example {
             throw new IOException();
         }
     }
+
+    public static List<String> findTextByPath(String path, String filename) throws IOException {
+        try (InputStream is = new FileInputStream(filename)) {
+            XMLReader reader = new XMLReader(is);
+            reader.trimText(true);
+            reader.setIgnoreComments(true);
+
+            List<String> texts = new ArrayList<>();
+            new XMLQueryEngine()
+                    .addQuery(path, texts::add)
+                    .run(reader);
+
+            return texts;
+        }
+    }
 }
@@ -0,0 +1,344 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A reader that never blocks on input, for documents arriving in pieces,
+ * e.g. from non-blocking socket channels. Bytes are pushed with
+ * {@code feedInput(...)} as they arrive, and {@link #next()} returns
+ * {@link XMLReaderConstants#EVENT_INCOMPLETE} when the next event continues
+ * beyond them:
+ * <pre>
+ * reader.feedInput(chunk);
+ * int event;
+ * while ((event = reader.next()) != XMLReaderConstants.EVENT_INCOMPLETE
+ *         &amp;&amp; event != XMLReaderConstants.END_DOCUMENT) {
+ *     ...
+ * }
+ * </pre>
+ * {@link #endOfInput()} tells the reader that nothing more will come, so the
+ * last events and END_DOCUMENT can be returned.
+ * <p>
+ * An incomplete event is read again from its start once more bytes are fed;
+ * the bytes of the event are kept until then. Accessors are undefined while
+ * the reader is on EVENT_INCOMPLETE. {@link #skipElement()},
+ * {@link #getElementText()} and {@link #skipToElement(String)} report
+ * missing input in their own return values.
+ * <p>
+ * One reader holds the state of one document, so a single thread can drive
+ * many readers, one per connection. It wraps an {@link XMLReader} over the
+ * fed bytes and offers its accessors and settings, but none of the methods
+ * that take other input.
+ */
+public class XMLAsyncReader implements XMLCursor {
+    private final XMLFeedSource source = new XMLFeedSource();
+    private final XMLReader reader = new XMLReader(source);
+
+    /**
+     * Copies the bytes, the array can be reused once this returns.
+     */
+    public void feedInput(byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        checkNotEnded();
+        source.feed(bytes, offset, length);
+    }
+
+    public void feedInput(byte[] bytes) {
+        feedInput(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Copies the remaining bytes of the buffer and moves its position to the limit.
+     */
+    public void feedInput(ByteBuffer bytes) {
+        checkNotEnded();
+        source.feed(bytes);
+    }
+
+    public void endOfInput() {
+        source.endOfInput();
+    }
+
+    /**
+     * Drops any fed input and starts over on a new document, reusing the
+     * buffers, the symbol table and the settings.
+     */
+    public void reset() throws IOException {
+        source.reset();
+        reader.getLexer().setSource(source);
+        reader.restart();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return reader.hasNext();
+    }
+
+    @Override
+    public int next() throws IOException {
+        XMLLexer lexer = reader.getLexer();
+        lexer.mark();
+        try {
+            return reader.next();
+        } catch (XMLFeedSource.NeedInput e) {
+            lexer.reset();
+            reader.setEventType(XMLReaderConstants.EVENT_INCOMPLETE);
+            return XMLReaderConstants.EVENT_INCOMPLETE;
+        }
+    }
+
+    /**
+     * Like {@link XMLReader#skipElement()}, but returns EVENT_INCOMPLETE if
+     * the end tag has not been fed yet. The reader then stays on the
+     * START_ELEMENT and the call can be repeated after more input.
+     */
+    public int skipElement() throws IOException {
+        readPendingAttributes();
+        XMLLexer lexer = reader.getLexer();
+        lexer.mark();
+        try {
+            return reader.skipElement();
+        } catch (XMLFeedSource.NeedInput e) {
+            lexer.reset();
+            return XMLReaderConstants.EVENT_INCOMPLETE;
+        }
+    }
+
+    /**
+     * Like {@link XMLReader#getElementText()}, but returns null if the end
+     * tag has not been fed yet. The reader then stays on the START_ELEMENT
+     * and the call can be repeated after more input.
+     */
+    public String getElementText() throws IOException {
+        if (reader.getEventType() == XMLReaderConstants.START_ELEMENT && !reader.isEmptyElement()) {
+            readPendingAttributes();
+            // Scan for the end tag first, so the reader only moves once it is there
+            XMLLexer lexer = reader.getLexer();
+            lexer.mark();
+            try {
+                lexer.skipElement();
+            } catch (XMLFeedSource.NeedInput e) {
+                return null;
+            } finally {
+                lexer.reset();
+            }
+        }
+        int length = reader.readElementText();
+        return new String(reader.getElementTextBytes(), 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Like {@link XMLReader#skipToElement(String)}, but every event up to the
+     * start tag is read. Also returns false when the input fed so far ends
+     * first; the reader is then on EVENT_INCOMPLETE instead of END_DOCUMENT
+     * and the call can be repeated after more input.
+     */
+    public boolean skipToElement(String name) throws IOException {
+        if (reader.getEventType() == XMLReaderConstants.END_DOCUMENT) return false;
+
+        int id = reader.getSymbolTable().intern(name);
+        while (true) {
+            int event = next();
+            if (event == XMLReaderConstants.START_ELEMENT && reader.getNameId() == id) return true;
+            if (event == XMLReaderConstants.EVENT_INCOMPLETE || event == XMLReaderConstants.END_DOCUMENT) return false;
+        }
+    }
+
+    // --- Current event ---
+
+    @Override
+    public int getEventType() {
+        return reader.getEventType();
+    }
+
+    @Override
+    public int getDepth() {
+        return reader.getDepth();
+    }
+
+    @Override
+    public String getLocalName() {
+        return reader.getLocalName();
+    }
+
+    @Override
+    public int getNameId() {
+        return reader.getNameId();
+    }
+
+    public String getPrefix() {
+        return reader.getPrefix();
+    }
+
+    public String getNamespaceURI() {
+        return reader.getNamespaceURI();
+    }
+
+    public String getNamespaceURI(String prefix) {
+        return reader.getNamespaceURI(prefix);
+    }
+
+    public int getNamespaceCount() {
+        return reader.getNamespaceCount();
+    }
+
+    public String getNamespacePrefix(int index) {
+        return reader.getNamespacePrefix(index);
+    }
+
+    public String getNamespaceURI(int index) {
+        return reader.getNamespaceURI(index);
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return reader.getAttributeCount();
+    }
+
+    @Override
+    public String getAttributeLocalName(int index) {
+        return reader.getAttributeLocalName(index);
+    }
+
+    @Override
+    public int getAttributeNameId(int index) {
+        return reader.getAttributeNameId(index);
+    }
+
+    public String getAttributePrefix(int index) {
+        return reader.getAttributePrefix(index);
+    }
+
+    public String getAttributeNamespace(int index) {
+        return reader.getAttributeNamespace(index);
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        return reader.getAttributeValue(index);
+    }
+
+    @Override
+    public int getAttributeIndex(int nameId) {
+        return reader.getAttributeIndex(nameId);
+    }
+
+    @Override
+    public String getAttributeValue(String attributeName) {
+        return reader.getAttributeValue(attributeName);
+    }
+
+    @Override
+    public Map<String, String> getAttributes() {
+        return reader.getAttributes();
+    }
+
+    @Override
+    public List<XMLAttribute> getAttributesList() {
+        return reader.getAttributesList();
+    }
+
+    @Override
+    public String getText() {
+        return reader.getText();
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        return reader.getTextCharacters();
+    }
+
+    @Override
+    public int getTextStart() {
+        return reader.getTextStart();
+    }
+
+    @Override
+    public int getTextLength() {
+        return reader.getTextLength();
+    }
+
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length) {
+        return reader.getTextCharacters(sourceStart, target, targetStart, length);
+    }
+
+    public XMLCharSequence getTextView() {
+        return reader.getTextView();
+    }
+
+    // --- Settings ---
+
+    @Override
+    public XMLSymbolTable getSymbolTable() {
+        return reader.getSymbolTable();
+    }
+
+    public void setSymbolTable(XMLSymbolTable symbols) {
+        reader.setSymbolTable(symbols);
+    }
+
+    public void setNamespaceAware(boolean namespaceAware) {
+        reader.setNamespaceAware(namespaceAware);
+    }
+
+    public boolean isNamespaceAware() {
+        return reader.isNamespaceAware();
+    }
+
+    public void trimText(boolean trim) {
+        reader.trimText(trim);
+    }
+
+    public void setIgnoreComments(boolean ignoreComments) {
+        reader.setIgnoreComments(ignoreComments);
+    }
+
+    public void setLazyAttributes(boolean lazyAttributes) {
+        reader.setLazyAttributes(lazyAttributes);
+    }
+
+    public void declareEntity(String name, String value) {
+        reader.declareEntity(name, value);
+    }
+
+    public void setEntityExpansionLimit(long limit) {
+        reader.setEntityExpansionLimit(limit);
+    }
+
+    public void setTokenBufferSize(int initialSize, int maxSize) {
+        reader.setTokenBufferSize(initialSize, maxSize);
+    }
+
+    public void setMetricsEnabled(boolean enabled) {
+        reader.setMetricsEnabled(enabled);
+    }
+
+    public void setMetricsLabel(String label) {
+        reader.setMetricsLabel(label);
+    }
+
+    public XMLParseMetrics getMetrics() {
+        return reader.getMetrics();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Skipping drops the position of lazy attributes, which reset() does not
+    // bring back, so they are read before a scan that may have to be retried
+    private void readPendingAttributes() {
+        if (reader.getEventType() == XMLReaderConstants.START_ELEMENT) reader.getAttributeCount();
+    }
+
+    private void checkNotEnded() {
+        if (source.isEndOfInput())
+            throw new IllegalStateException("Input was already ended");
+    }
+}
@@ -0,0 +1,266 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds instances of a record class from elements, e.g.
+ * {@code record Book(String id, int year, double price)} from
+ * {@code <book id="b1"><year>1999</year><price>9.5</price></book>}.
+ * A record component takes the value of the attribute or of the child
+ * element with the same name; whichever comes later wins. Missing values
+ * are null, 0 or false.
+ * <p>
+ * Supported component types are String, the primitives and their boxes,
+ * and enums. Numbers and booleans are parsed from the UTF-8 bytes of the
+ * value without creating a String.
+ * <p>
+ * The canonical constructor is compiled once into a method handle that
+ * takes the values from arrays, so primitives are never boxed, and names
+ * are resolved to components through a table indexed by symbol table id.
+ * A binder holds no per-document state and can be shared by threads, e.g.
+ * as the {@link XMLRecordMapper} of an {@link XMLParallelReader}.
+ */
+public class XMLBinder<T extends Record> {
+    // How a component value is stored before the constructor is called
+    private static final int STRING = 0;
+    private static final int LONG = 1;
+    private static final int INT = 2;
+    private static final int SHORT = 3;
+    private static final int BYTE = 4;
+    private static final int CHAR = 5;
+    private static final int BOOLEAN = 6;
+    private static final int DOUBLE = 7;
+    private static final int FLOAT = 8;
+    private static final int ENUM = 9;
+
+    private final Class<T> type;
+    private final String[] names;
+    private final Class<?>[] types;
+    private final int[] kinds;
+    private final boolean[] boxed;
+    // (Object[] references, long[] integers, double[] decimals) -> T
+    private final MethodHandle constructor;
+
+    private static final class Slots {
+        final XMLSymbolTable symbols;
+        // Component index + 1 by symbol id, 0 for names of no component
+        final int[] byNameId;
+
+        Slots(XMLSymbolTable symbols, int[] byNameId) {
+            this.symbols = symbols;
+            this.byNameId = byNameId;
+        }
+    }
+
+    private volatile Slots slots;
+
+    /**
+     * @throws IllegalArgumentException if a component has an unsupported
+     * type or the constructor is not accessible
+     */
+    public XMLBinder(Class<T> type) {
+        this.type = type;
+        RecordComponent[] components = type.getRecordComponents();
+        int count = components.length;
+        names = new String[count];
+        types = new Class<?>[count];
+        kinds = new int[count];
+        boxed = new boolean[count];
+
+        for (int i = 0; i < count; i++) {
+            names[i] = components[i].getName();
+            types[i] = components[i].getType();
+            kinds[i] = kindOf(types[i]);
+            boxed[i] = !types[i].isPrimitive() && kinds[i] != STRING && kinds[i] != ENUM;
+        }
+
+        constructor = compileConstructor();
+    }
+
+    /**
+     * Reads the element the reader is on into a new instance and leaves the
+     * reader on its END_ELEMENT. Must be called on START_ELEMENT.
+     */
+    public T bind(XMLReader reader) throws IOException {
+        if (reader.getEventType() != XMLReaderConstants.START_ELEMENT)
+            throw new IllegalStateException("bind() must be called on START_ELEMENT");
+
+        int[] byNameId = slots(reader.getSymbolTable()).byNameId;
+        int count = names.length;
+        Object[] references = new Object[count];
+        long[] integers = new long[count];
+        double[] decimals = new double[count];
+
+        // --- Attributes ---
+        byte[] attributeBytes = reader.getAttributeValueBytes();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            int slot = slot(byNameId, reader.getAttributeNameId(i));
+            if (slot != -1)
+                set(slot, attributeBytes, reader.getAttributeValueStart(i), reader.getAttributeValueLength(i),
+                        references, integers, decimals);
+        }
+
+        // --- Child elements ---
+        int depth = reader.getDepth();
+        while (true) {
+            int event = reader.next();
+            if (event == XMLReaderConstants.START_ELEMENT) {
+                int slot = slot(byNameId, reader.getNameId());
+                if (slot == -1) {
+                    reader.skipElement();
+                } else {
+                    int length = reader.readElementText();
+                    set(slot, reader.getElementTextBytes(), 0, length, references, integers, decimals);
+                }
+            } else if (event == XMLReaderConstants.END_ELEMENT && reader.getDepth() < depth) {
+                break;
+            } else if (event == XMLReaderConstants.END_DOCUMENT) {
+                throw new IOException("Unexpected end of document");
+            }
+        }
+
+        try {
+            return type.cast((Object) constructor.invokeExact(references, integers, decimals));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Constructor of " + type.getName() + " failed", e);
+        }
+    }
+
+    /**
+     * Moves to the next element named {@code elementName} and binds it.
+     *
+     * @return the instance, or null at the end of the document
+     */
+    public T read(XMLReader reader, String elementName) throws IOException {
+        return reader.skipToElement(elementName) ? bind(reader) : null;
+    }
+
+    private void set(int slot, byte[] bytes, int offset, int length,
+                     Object[] references, long[] integers, double[] decimals) {
+        switch (kinds[slot]) {
+            case STRING -> references[slot] = new String(bytes, offset, length, StandardCharsets.UTF_8);
+            case ENUM -> references[slot] = enumValue(types[slot], new String(bytes, offset, length, StandardCharsets.UTF_8).trim());
+            case CHAR -> {
+                String value = new String(bytes, offset, length, StandardCharsets.UTF_8);
+                char character = value.isEmpty() ? 0 : value.charAt(0);
+                if (boxed[slot]) references[slot] = character;
+                else integers[slot] = character;
+            }
+            case DOUBLE, FLOAT -> {
+                double value = kinds[slot] == DOUBLE
+                        ? XMLNumbers.parseDouble(bytes, offset, length)
+                        : XMLNumbers.parseFloat(bytes, offset, length);
+                if (boxed[slot]) references[slot] = kinds[slot] == DOUBLE ? (Object) value : (Object) (float) value;
+                else decimals[slot] = value;
+            }
+            default -> {
+                long value = switch (kinds[slot]) {
+                    case INT -> XMLNumbers.parseLong(bytes, offset, length, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                    case SHORT -> XMLNumbers.parseLong(bytes, offset, length, Short.MIN_VALUE, Short.MAX_VALUE);
+                    case BYTE -> XMLNumbers.parseLong(bytes, offset, length, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                    case BOOLEAN -> XMLNumbers.parseBoolean(bytes, offset, length) ? 1 : 0;
+                    default -> XMLNumbers.parseLong(bytes, offset, length, Long.MIN_VALUE, Long.MAX_VALUE);
+                };
+                if (boxed[slot]) references[slot] = box(kinds[slot], value);
+                else integers[slot] = value;
+            }
+        }
+    }
+
+    private static Object box(int kind, long value) {
+        return switch (kind) {
+            case INT -> (int) value;
+            case SHORT -> (short) value;
+            case BYTE -> (byte) value;
+            case BOOLEAN -> value != 0;
+            default -> value;
+        };
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(Class<?> type, String name) {
+        return Enum.valueOf((Class) type, name);
+    }
+
+    private static int slot(int[] byNameId, int nameId) {
+        return nameId >= 0 && nameId < byNameId.length ? byNameId[nameId] - 1 : -1;
+    }
+
+    private Slots slots(XMLSymbolTable symbols) {
+        Slots current = slots;
+        if (current != null && current.symbols == symbols) return current;
+
+        int[] ids = new int[names.length];
+        int maxId = -1;
+        for (int i = 0; i < names.length; i++) {
+            ids[i] = symbols.intern(names[i]);
+            maxId = Math.max(maxId, ids[i]);
+        }
+        int[] byNameId = new int[maxId + 1];
+        for (int i = 0; i < names.length; i++) byNameId[ids[i]] = i + 1;
+
+        current = new Slots(symbols, byNameId);
+        slots = current;
+        return current;
+    }
+
+    /**
+     * Adapts the canonical constructor to take component i from
+     * references[i], integers[i] or decimals[i] depending on its type.
+     */
+    private MethodHandle compileConstructor() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            MethodHandle handle = lookup.findConstructor(type, MethodType.methodType(void.class, types));
+
+            int count = types.length;
+            MethodHandle[] getters = new MethodHandle[count];
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                Class<?> array;
+                if (boxed[i] || kinds[i] == STRING || kinds[i] == ENUM) {
+                    array = Object[].class;
+                    order[i] = 0;
+                } else if (kinds[i] == DOUBLE || kinds[i] == FLOAT) {
+                    array = double[].class;
+                    order[i] = 2;
+                } else {
+                    array = long[].class;
+                    order[i] = 1;
+                }
+
+                MethodHandle getter = MethodHandles.insertArguments(MethodHandles.arrayElementGetter(array), 1, i);
+                // long to int, short, byte, char and boolean (lowest bit), double to float
+                getters[i] = MethodHandles.explicitCastArguments(getter, MethodType.methodType(types[i], array));
+            }
+
+            handle = MethodHandles.filterArguments(handle, 0, getters);
+            handle = MethodHandles.permuteArguments(handle,
+                    MethodType.methodType(type, Object[].class, long[].class, double[].class), order);
+            return handle.asType(MethodType.methodType(Object.class, Object[].class, long[].class, double[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot access the constructor of " + type.getName(), e);
+        }
+    }
+
+    private static int kindOf(Class<?> type) {
+        if (type == String.class) return STRING;
+        if (type == long.class || type == Long.class) return LONG;
+        if (type == int.class || type == Integer.class) return INT;
+        if (type == short.class || type == Short.class) return SHORT;
+        if (type == byte.class || type == Byte.class) return BYTE;
+        if (type == char.class || type == Character.class) return CHAR;
+        if (type == boolean.class || type == Boolean.class) return BOOLEAN;
+        if (type == double.class || type == Double.class) return DOUBLE;
+        if (type == float.class || type == Float.class) return FLOAT;
+        if (type.isEnum()) return ENUM;
+        throw new IllegalArgumentException("Unsupported record component type " + type.getName());
+    }
+}
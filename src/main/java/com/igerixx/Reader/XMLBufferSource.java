@@ -0,0 +1,39 @@
+package com.igerixx.Reader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lets the lexer scan bytes the caller already holds, in a heap array or a
+ * direct buffer, in place. The whole document is there from the start, so
+ * nothing is copied and nothing is refilled.
+ */
+class XMLBufferSource extends XMLSource {
+    private ByteBuffer input;
+
+    /**
+     * @param input the document from index 0 to its limit
+     */
+    XMLBufferSource(ByteBuffer input) {
+        this.input = input;
+    }
+
+    void reset(ByteBuffer input) {
+        this.input = input;
+        buffer = null;
+        limit = 0;
+    }
+
+    @Override
+    int fill(int keep) {
+        if (buffer == null) {
+            buffer = input;
+            limit = input.limit();
+            return limit == 0 ? -1 : limit;
+        }
+
+        // Everything is loaded, only drop the bytes before keep
+        buffer = buffer.slice(keep, limit - keep);
+        limit -= keep;
+        return -1;
+    }
+}
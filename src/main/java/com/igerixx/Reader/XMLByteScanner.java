@@ -0,0 +1,50 @@
+package com.igerixx.Reader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the next byte the lexer has to look at in a run of text, an
+ * attribute value or skipped markup, many bytes at a time. Uses the
+ * incubating Vector API when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}, SWAR on long words otherwise.
+ * All methods return {@code to} when there is no such byte in
+ * {@code [from, to)}.
+ */
+abstract class XMLByteScanner {
+    static final XMLByteScanner INSTANCE = create();
+
+    /**
+     * Returns the index of the first '<', '&' or byte below 32.
+     */
+    abstract int findContentEnd(ByteBuffer buffer, int from, int to);
+
+    /**
+     * Returns the index of the first {@code quote} or '&'.
+     */
+    abstract int findAttributeEnd(ByteBuffer buffer, int from, int to, int quote);
+
+    /**
+     * Returns the index of the first '>' or quote.
+     */
+    abstract int findTagEnd(ByteBuffer buffer, int from, int to);
+
+    /**
+     * Returns the index of the first {@code b}.
+     */
+    abstract int indexOf(ByteBuffer buffer, int from, int to, int b);
+
+    private static XMLByteScanner create() {
+        XMLByteScanner swar = new XMLSwarScanner();
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+            return swar;
+
+        // Only loaded when the module is present, otherwise it does not link
+        try {
+            return (XMLByteScanner) Class.forName("com.igerixx.Reader.XMLVectorScanner")
+                    .getDeclaredConstructor(XMLByteScanner.class)
+                    .newInstance(swar);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return swar;
+        }
+    }
+}
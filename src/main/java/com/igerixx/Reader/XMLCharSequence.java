@@ -0,0 +1,52 @@
+package com.igerixx.Reader;
+
+/**
+ * Reusable {@link CharSequence} over a region of a char array owned by the
+ * reader. The contents change on every {@link XMLReader#next()}, call
+ * {@link #toString()} to keep them.
+ */
+public final class XMLCharSequence implements CharSequence {
+    private char[] chars;
+    private int start;
+    private int length;
+
+    XMLCharSequence() {}
+
+    void set(char[] chars, int start, int length) {
+        this.chars = chars;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException(index);
+        return chars[start + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException();
+        return new String(chars, this.start + start, end - start);
+    }
+
+    public boolean contentEquals(CharSequence other) {
+        if (other.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != other.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return length == 0 ? "" : new String(chars, start, length);
+    }
+}
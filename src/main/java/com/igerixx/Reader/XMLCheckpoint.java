@@ -0,0 +1,166 @@
+package com.igerixx.Reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The position of an {@link XMLReader} between two events, taken by
+ * {@link XMLReader#checkpoint()} and continued from by
+ * {@link XMLReader#resume(XMLCheckpoint)} in a later run:
+ * <pre>
+ * XMLReader reader = new XMLReader(path);
+ * reader.setFollow(true);
+ * if (saved != null) reader.resume(XMLCheckpoint.fromByteArray(saved));
+ * while (reader.hasNext()) {
+ *     reader.next();
+ *     ...
+ *     if (committed) store(reader.checkpoint().toByteArray());
+ * }
+ * </pre>
+ * It holds the byte offset in the file, the depth, the namespace bindings
+ * of the open elements, the entities declared in the DOCTYPE, and what is
+ * pending at that offset: the end of a self-closing element, or the rest of
+ * text that was split because it did not fit in the token storage. A few
+ * hundred bytes at most for usual documents.
+ */
+public final class XMLCheckpoint {
+    private static final int MAGIC = 0x584D4C43; // "XMLC"
+    // Version 1 had no entities
+    private static final int VERSION = 2;
+
+    final long offset;
+    final int depth;
+    final boolean namespaceAware;
+    // bindingStarts of depth 1 to depth, then the bindings in scope
+    final int[] bindingStarts;
+    final String[] prefixes;
+    final String[] namespaces;
+    // Qualified name of a self-closing element whose END_ELEMENT is next, or null
+    final String pendingEnd;
+    // Start of a UTF-8 sequence cut off from split text, or null if the text was not split
+    final byte[] splitTail;
+    // Entities declared in the DOCTYPE, or null if the document has none
+    final XMLEntityTable entities;
+
+    XMLCheckpoint(long offset, int depth, boolean namespaceAware, int[] bindingStarts, String[] prefixes,
+                  String[] namespaces, String pendingEnd, byte[] splitTail, XMLEntityTable entities) {
+        this.offset = offset;
+        this.depth = depth;
+        this.namespaceAware = namespaceAware;
+        this.bindingStarts = bindingStarts;
+        this.prefixes = prefixes;
+        this.namespaces = namespaces;
+        this.pendingEnd = pendingEnd;
+        this.splitTail = splitTail;
+        this.entities = entities;
+    }
+
+    /**
+     * Returns the offset in the file of the first byte not read yet.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(offset);
+            out.writeInt(depth);
+            out.writeBoolean(namespaceAware);
+            for (int start : bindingStarts) out.writeInt(start);
+            out.writeInt(prefixes.length);
+            for (int i = 0; i < prefixes.length; i++) {
+                out.writeUTF(prefixes[i]);
+                out.writeUTF(namespaces[i]);
+            }
+            out.writeBoolean(pendingEnd != null);
+            if (pendingEnd != null) out.writeUTF(pendingEnd);
+            out.writeInt(splitTail == null ? -1 : splitTail.length);
+            if (splitTail != null) out.write(splitTail);
+
+            List<byte[]> entries = new ArrayList<>();
+            if (entities != null) entities.forEach((name, value) -> {
+                entries.add(name);
+                entries.add(value);
+            });
+            out.writeInt(entities == null ? -1 : entries.size() / 2);
+            for (byte[] entry : entries) {
+                out.writeInt(entry.length);
+                out.write(entry);
+            }
+        } catch (IOException e) {
+            // Not thrown by a byte array
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static XMLCheckpoint fromByteArray(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a checkpoint");
+            int version = in.readInt();
+            if (version != 1 && version != VERSION)
+                throw new IOException("Unsupported checkpoint version " + version);
+            long offset = in.readLong();
+            int depth = in.readInt();
+            boolean namespaceAware = in.readBoolean();
+            if (offset < 0 || depth < 0 || depth > bytes.length)
+                throw new IOException("Checkpoint is corrupted");
+            int[] bindingStarts = new int[depth];
+            for (int i = 0; i < depth; i++) bindingStarts[i] = in.readInt();
+
+            int bindingCount = in.readInt();
+            if (bindingCount < 0 || bindingCount > bytes.length)
+                throw new IOException("Checkpoint is corrupted");
+            String[] prefixes = new String[bindingCount];
+            String[] namespaces = new String[bindingCount];
+            for (int i = 0; i < bindingCount; i++) {
+                prefixes[i] = in.readUTF();
+                namespaces[i] = in.readUTF();
+            }
+            String pendingEnd = in.readBoolean() ? in.readUTF() : null;
+            int tailLength = in.readInt();
+            if (tailLength < -1 || tailLength > 3)
+                throw new IOException("Checkpoint is corrupted");
+            byte[] splitTail = tailLength == -1 ? null : in.readNBytes(tailLength);
+
+            XMLEntityTable entities = null;
+            int entityCount = version == 1 ? -1 : in.readInt();
+            if (entityCount < -1 || entityCount > bytes.length)
+                throw new IOException("Checkpoint is corrupted");
+            if (entityCount != -1) {
+                entities = new XMLEntityTable();
+                for (int i = 0; i < entityCount; i++)
+                    entities.declare(readBytes(in, bytes.length), readBytes(in, bytes.length));
+            }
+            return new XMLCheckpoint(offset, depth, namespaceAware, bindingStarts, prefixes, namespaces,
+                    pendingEnd, splitTail, entities);
+        } catch (EOFException e) {
+            throw new IOException("Checkpoint is truncated", e);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in, int limit) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > limit)
+            throw new IOException("Checkpoint is corrupted");
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) throw new EOFException();
+        return bytes;
+    }
+}
@@ -0,0 +1,93 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The pull API shared by {@link XMLReader} and readers that deliver its
+ * events from elsewhere, such as {@link XMLPipelinedReader}. Code written
+ * against it works with any of them.
+ */
+public interface XMLCursor extends AutoCloseable {
+    boolean hasNext();
+
+    int next() throws IOException;
+
+    int getEventType();
+
+    /**
+     * Returns the number of open elements: 1 on the root START_ELEMENT, 0 on
+     * its END_ELEMENT.
+     */
+    int getDepth();
+
+    String getLocalName();
+
+    /**
+     * Returns the symbol table id of the current element name, or -1 if the
+     * event has no name.
+     */
+    int getNameId();
+
+    XMLSymbolTable getSymbolTable();
+
+    int getAttributeCount();
+
+    String getAttributeLocalName(int index);
+
+    int getAttributeNameId(int index);
+
+    String getAttributeValue(int index);
+
+    /**
+     * Returns the index of the attribute with the given name id, or -1.
+     */
+    int getAttributeIndex(int nameId);
+
+    String getText();
+
+    /**
+     * Returns a buffer holding the text of the current event, starting at
+     * {@link #getTextStart()}. The buffer is reused by the next event.
+     */
+    char[] getTextCharacters();
+
+    int getTextStart();
+
+    int getTextLength();
+
+    @Override
+    void close() throws IOException;
+
+    default boolean hasAttributes() {
+        return getAttributeCount() != 0;
+    }
+
+    default String getAttributeValue(String attributeName) {
+        for (int i = 0; i < getAttributeCount(); i++) {
+            if (getAttributeLocalName(i).equals(attributeName))
+                return getAttributeValue(i);
+        }
+        return null;
+    }
+
+    /**
+     * Returns a new map of the attributes of the current element in document order.
+     */
+    default Map<String, String> getAttributes() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < getAttributeCount(); i++)
+            map.put(getAttributeLocalName(i), getAttributeValue(i));
+        return map;
+    }
+
+    default List<XMLAttribute> getAttributesList() {
+        List<XMLAttribute> list = new ArrayList<>(getAttributeCount());
+        for (int i = 0; i < getAttributeCount(); i++)
+            list.add(new XMLAttribute(getAttributeLocalName(i), getAttributeValue(i)));
+        return list;
+    }
+}
@@ -0,0 +1,83 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Re-encodes a character source as UTF-8 so that readers built from an
+ * {@link java.io.InputStreamReader} or a non UTF-8 charset can still be
+ * scanned by the byte level {@link XMLLexer}.
+ */
+class XMLEncodingInputStream extends InputStream {
+    private final Reader reader;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer charBuffer = CharBuffer.allocate(8 * 1024);
+    // The UTF-8 form of a char that did not fit in the space passed to read,
+    // handed out over the next calls
+    private final ByteBuffer pending = ByteBuffer.allocate(4);
+    private final byte[] single = new byte[1];
+    private boolean endOfInput = false;
+    private boolean flushed = false;
+
+    XMLEncodingInputStream(Reader reader) {
+        this.reader = reader;
+        charBuffer.flip();
+        pending.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+
+        ByteBuffer out = ByteBuffer.wrap(b, off, len);
+        if (pending.hasRemaining()) {
+            int length = Math.min(pending.remaining(), len);
+            pending.get(b, off, length);
+            return length;
+        }
+
+        while (out.hasRemaining() && !flushed) {
+            CoderResult result = encoder.encode(charBuffer, out, endOfInput);
+            if (result.isOverflow()) break;
+
+            if (endOfInput) {
+                flushed = encoder.flush(out).isUnderflow();
+                break;
+            }
+
+            // Underflow: keep a dangling high surrogate and read more chars
+            charBuffer.compact();
+            if (reader.read(charBuffer) == -1) endOfInput = true;
+            charBuffer.flip();
+        }
+
+        int written = out.position() - off;
+        if (written == 0 && !flushed) {
+            // Too little space for the next char, which is at most 4 bytes
+            pending.clear();
+            encoder.encode(charBuffer, pending, endOfInput);
+            pending.flip();
+            return read(b, off, len);
+        }
+        return written == 0 ? -1 : written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
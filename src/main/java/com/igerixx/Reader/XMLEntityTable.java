@@ -0,0 +1,153 @@
+package com.igerixx.Reader;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Named entities and their replacement text, as a trie over the UTF-8 bytes
+ * of the names. The lexer walks it byte by byte while it peeks at a
+ * reference, so a lookup needs neither a String nor a copy of the name.
+ * <p>
+ * Node 0 is the root. Children of a node are kept as a list of siblings,
+ * the first names declared are found first, which puts the predefined
+ * entities in front.
+ */
+final class XMLEntityTable {
+    // amp, lt, gt, quot and apos, never changed: copied before more are declared
+    static final XMLEntityTable PREDEFINED = new XMLEntityTable();
+
+    static {
+        PREDEFINED.declare("amp".getBytes(), new byte[] {'&'});
+        PREDEFINED.declare("lt".getBytes(), new byte[] {'<'});
+        PREDEFINED.declare("gt".getBytes(), new byte[] {'>'});
+        PREDEFINED.declare("quot".getBytes(), new byte[] {'"'});
+        PREDEFINED.declare("apos".getBytes(), new byte[] {'\''});
+    }
+
+    private byte[] labels = new byte[32];
+    private int[] firstChild = new int[32];
+    private int[] nextSibling = new int[32];
+    private byte[][] values = new byte[32][];
+    private int nodeCount = 1;
+    // Longest name, bounds how far the lexer peeks
+    private int maxNameLength = 0;
+
+    XMLEntityTable() {
+        firstChild[0] = -1;
+        nextSibling[0] = -1;
+    }
+
+    XMLEntityTable copy() {
+        XMLEntityTable copy = new XMLEntityTable();
+        copy.labels = labels.clone();
+        copy.firstChild = firstChild.clone();
+        copy.nextSibling = nextSibling.clone();
+        copy.values = values.clone();
+        copy.nodeCount = nodeCount;
+        copy.maxNameLength = maxNameLength;
+        return copy;
+    }
+
+    /**
+     * Adds an entity, unless one of that name is already declared: the
+     * first declaration binds, as in a DTD.
+     */
+    void declare(byte[] name, byte[] value) {
+        int node = addName(name);
+        if (values[node] == null) values[node] = value;
+    }
+
+    /**
+     * Adds an entity, or replaces the text of the one of that name.
+     */
+    void put(byte[] name, byte[] value) {
+        values[addName(name)] = value;
+    }
+
+    /**
+     * Returns the replacement text of {@code name}, or null if it is not declared.
+     */
+    byte[] get(byte[] name) {
+        int node = 0;
+        for (int i = 0; i < name.length && node != -1; i++) node = child(node, name[i] & 0xFF);
+        return node == -1 ? null : values[node];
+    }
+
+    /**
+     * Adds the entities of {@code other} whose names are not declared here.
+     */
+    void declareAll(XMLEntityTable other) {
+        other.forEach(this::declare);
+    }
+
+    /**
+     * Passes the name and replacement text of every entity to {@code action}.
+     */
+    void forEach(BiConsumer<byte[], byte[]> action) {
+        forEach(0, new byte[maxNameLength], 0, action);
+    }
+
+    private void forEach(int node, byte[] name, int length, BiConsumer<byte[], byte[]> action) {
+        if (values[node] != null) action.accept(Arrays.copyOf(name, length), values[node]);
+        for (int child = firstChild[node]; child != -1; child = nextSibling[child]) {
+            name[length] = labels[child];
+            forEach(child, name, length + 1, action);
+        }
+    }
+
+    /**
+     * Returns the child of {@code node} reached by byte {@code b}, or -1.
+     */
+    int child(int node, int b) {
+        int child = firstChild[node];
+        while (child != -1 && (labels[child] & 0xFF) != b) child = nextSibling[child];
+        return child;
+    }
+
+    /**
+     * Returns the replacement text of the name ending at {@code node}, or
+     * null if no declared name ends there.
+     */
+    byte[] getValue(int node) {
+        return values[node];
+    }
+
+    int getMaxNameLength() {
+        return maxNameLength;
+    }
+
+    private int addName(byte[] name) {
+        int node = 0;
+        for (byte b : name) {
+            int child = child(node, b & 0xFF);
+            if (child == -1) child = addChild(node, b);
+            node = child;
+        }
+        maxNameLength = Math.max(maxNameLength, name.length);
+        return node;
+    }
+
+    private int addChild(int node, byte b) {
+        if (nodeCount == labels.length) {
+            int length = nodeCount * 2;
+            labels = Arrays.copyOf(labels, length);
+            firstChild = Arrays.copyOf(firstChild, length);
+            nextSibling = Arrays.copyOf(nextSibling, length);
+            values = Arrays.copyOf(values, length);
+        }
+        int child = nodeCount++;
+        labels[child] = b;
+        firstChild[child] = -1;
+        nextSibling[child] = -1;
+
+        // Appended, so earlier names stay first
+        if (firstChild[node] == -1) {
+            firstChild[node] = child;
+        } else {
+            int last = firstChild[node];
+            while (nextSibling[last] != -1) last = nextSibling[last];
+            nextSibling[last] = child;
+        }
+        return child;
+    }
+}
@@ -0,0 +1,83 @@
+package com.igerixx.Reader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Holds bytes pushed by {@link XMLAsyncReader}. Fed bytes are appended after
+ * {@link #limit} and handed to the lexer by the next {@link #fill(int)}; when
+ * there are none and the input has not ended, fill throws {@link #NEED_INPUT}
+ * instead of blocking, leaving the buffer as it was.
+ */
+class XMLFeedSource extends XMLSource {
+    /**
+     * Signals that the event being read continues in bytes not fed yet.
+     * Preallocated without a stack trace, it is part of normal operation.
+     */
+    static final class NeedInput extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private NeedInput() {
+            super("More input is needed", null, false, false);
+        }
+    }
+
+    static final NeedInput NEED_INPUT = new NeedInput();
+
+    // Bytes in buffer, those from limit on are not yet seen by the lexer
+    private int end = 0;
+    private boolean endOfInput = false;
+
+    void feed(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer.array(), end, length);
+        end += length;
+    }
+
+    void feed(ByteBuffer bytes) {
+        int length = bytes.remaining();
+        ensureCapacity(length);
+        bytes.get(buffer.array(), end, length);
+        end += length;
+    }
+
+    void reset() {
+        end = 0;
+        limit = 0;
+        endOfInput = false;
+    }
+
+    void endOfInput() {
+        endOfInput = true;
+    }
+
+    boolean isEndOfInput() {
+        return endOfInput;
+    }
+
+    @Override
+    int fill(int keep) {
+        if (end == limit && !endOfInput) throw NEED_INPUT;
+        int read = end - limit;
+
+        if (buffer == null)
+            buffer = ByteBuffer.allocate(bufferSize);
+        byte[] array = buffer.array();
+        System.arraycopy(array, keep, array, 0, end - keep);
+        end -= keep;
+        limit = end;
+        return read == 0 ? -1 : read;
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(Math.max(bufferSize, length));
+            return;
+        }
+        if (length > buffer.capacity() - end) {
+            // Offsets the lexer holds stay valid, so nothing is compacted here
+            byte[] grown = new byte[Math.max(end + length, buffer.capacity() * 2)];
+            System.arraycopy(buffer.array(), 0, grown, 0, end);
+            buffer = ByteBuffer.wrap(grown);
+        }
+    }
+}
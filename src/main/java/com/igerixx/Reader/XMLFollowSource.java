@@ -0,0 +1,100 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads a file that is still being written, such as a log. At the end of
+ * the file it polls for appended bytes instead of ending the input, until
+ * it is closed, possibly from another thread.
+ */
+class XMLFollowSource extends XMLSource {
+    private static final long POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final FileChannel channel;
+    private boolean closeChannel;
+    // Offset in the file of the next byte read
+    private long position;
+    private volatile boolean closed = false;
+    private volatile Thread waiter;
+
+    XMLFollowSource(FileChannel channel, boolean closeChannel, long position) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.position = position;
+    }
+
+    boolean isCloseChannel() {
+        return closeChannel;
+    }
+
+    /**
+     * Hands the channel over to another source, this one no longer closes it.
+     */
+    FileChannel takeChannel() {
+        closeChannel = false;
+        return channel;
+    }
+
+    void seek(long position) {
+        this.position = position;
+        limit = 0;
+    }
+
+    @Override
+    int fill(int keep) throws IOException {
+        if (buffer == null)
+            buffer = ByteBuffer.allocate(bufferSize);
+
+        byte[] array = buffer.array();
+        int kept = limit - keep;
+        if (kept == array.length) {
+            byte[] grown = new byte[array.length * 2];
+            System.arraycopy(array, keep, grown, 0, kept);
+            buffer = ByteBuffer.wrap(grown);
+            array = grown;
+        } else {
+            System.arraycopy(array, keep, array, 0, kept);
+        }
+        limit = kept;
+
+        while (!closed) {
+            int read;
+            try {
+                buffer.position(kept);
+                read = channel.read(buffer, position);
+                buffer.clear();
+            } catch (ClosedChannelException e) {
+                if (closed) break;
+                throw e;
+            }
+
+            if (read > 0) {
+                position += read;
+                limit = kept + read;
+                return read;
+            }
+            if (channel.size() < position)
+                throw new IOException("File was truncated");
+
+            // --- Wait for appended bytes ---
+            waiter = Thread.currentThread();
+            LockSupport.parkNanos(this, POLL_INTERVAL);
+        }
+        return -1;
+    }
+
+    /**
+     * Ends the input, also while another thread waits for appended bytes.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(waiter);
+        if (closeChannel) channel.close();
+    }
+}
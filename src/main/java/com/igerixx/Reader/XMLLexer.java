@@ -3,618 +3,1304 @@ package com.igerixx.Reader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 
 public class XMLLexer {
-    private InputStreamReader isr;
-    private final int bufferSize = 16 * 1024; // 16 Kb
-    private final int stringBufferSize = 4 * 1024; // 4 Kb
-    private final char[] charBuffer = new char[bufferSize];
-    private final char[] charString = new char[stringBufferSize];
+    // Values of punctuation tokens, shared so that no token allocates
+    private static final byte[] TAG_OPEN_BYTES = {'<'};
+    private static final byte[] TAG_CLOSE_BYTES = {'>'};
+    private static final byte[] SELF_CLOSE_BYTES = {'/', '>'};
+    private static final byte[] EQUAL_BYTES = {'='};
+    private static final byte[] PI_OPEN_BYTES = {'<', '?'};
+    private static final byte[] PI_CLOSE_BYTES = {'?', '>'};
+    private static final byte[] DECLARATION_OPEN_BYTES = {'<', '!'};
+    private static final byte[] COMMENT_CLOSE_BYTES = {'-', '-', '>'};
+    private static final byte[] CDATA_CLOSE_BYTES = {']', ']', '>'};
+    private static final byte[] NULL_BYTES = {'n', 'u', 'l', 'l'};
+    // Markup looked for in the internal subset of a DOCTYPE
+    private static final byte[] COMMENT_OPEN_BYTES = {'<', '!', '-', '-'};
+    private static final byte[] ENTITY_BYTES = {'<', '!', 'E', 'N', 'T', 'I', 'T', 'Y'};
+    private static final XMLByteScanner SCANNER = XMLByteScanner.INSTANCE;
+    private static final int DEFAULT_TOKEN_SIZE = 4 * 1024; // 4 Kb
+    private static final int DEFAULT_MAX_TOKEN_SIZE = 64 * 1024 * 1024; // 64 Mb
+    private static final long DEFAULT_ENTITY_EXPANSION_LIMIT = 50 * 1024 * 1024; // 50 Mb
+    // Longest character reference decoded, from the '#' to the last digit
+    private static final int MAX_REFERENCE_LENGTH = 32;
+
+    // Markup is pure ASCII, so the lexer scans raw UTF-8 bytes and leaves
+    // decoding to the token values that are actually read
+    private XMLSource source;
+    private ByteBuffer byteBuffer;
+    // Valid bytes in byteBuffer, bytes before pos are already consumed
     private int readByte = 0;
     private int pos = 0;
-    private int lastCharIndex = 0;
+    // Offset in the input of byteBuffer index 0, and of the '<' of the last start tag
+    private long offset = 0;
+    private long tagStart = -1;
+    private boolean endOfInput = false;
+    private boolean started = false;
+
+    // Token storage grows on demand up to maxTokenSize
+    private byte[] byteString = new byte[DEFAULT_TOKEN_SIZE];
+    private int maxTokenSize = DEFAULT_MAX_TOKEN_SIZE;
+
     private int state = XMLLexerConstants.OUT;
     private boolean trim = true;
     private boolean isStringBufferFull = false;
-    private boolean isLastAttribute = true;
+    // Start of a UTF-8 sequence cut off when text was split
+    private final byte[] splitTail = new byte[3];
+    private int splitTailLength = 0;
+    private boolean isNameRead = false;
+    private int skippedDepth = 0;
+    // Attributes passed by skipAttributes(), kept in the buffer until the
+    // next token, -1 when there are none
+    private int attributeStart = -1;
+    private int attributeEnd;
     private XMLToken token = new XMLToken();
+    // Named entities, the predefined ones until more are declared. Those
+    // of the DOCTYPE of the current document are kept apart, and merged
+    // with the others into the table used for it; both null when it has none
+    private XMLEntityTable entities = XMLEntityTable.PREDEFINED;
+    private XMLEntityTable doctypeEntities;
+    private XMLEntityTable documentEntities;
+    // Bytes that entity references added to the current document, beyond
+    // their own length, and how many they may add
+    private long expandedBytes = 0;
+    private long entityExpansionLimit = DEFAULT_ENTITY_EXPANSION_LIMIT;
+    // null unless metrics are enabled
+    private XMLMetrics metrics;
+
+    // Start of the event being read when input may run out mid-token,
+    // -1 when not marked. Bytes from the mark on are kept by refill()
+    private int mark = -1;
+    private int markState;
+    private boolean markNameRead;
+    private boolean markStringBufferFull;
+    private int markSplitTailLength;
+    private long markExpandedBytes;
 
     public XMLLexer(InputStream is) throws IOException {
-        isr = new InputStreamReader(is, StandardCharsets.UTF_8);
-        refill();
+        source = new XMLStreamSource(is);
     }
 
     public XMLLexer(InputStream is, Charset charset) throws IOException {
-        isr = new InputStreamReader(is, charset);
-        refill();
+        source = new XMLStreamSource(utf8(is, charset));
     }
 
     public XMLLexer(InputStreamReader isr) throws IOException {
-        this.isr = isr;
-        refill();
+        source = new XMLStreamSource(new XMLEncodingInputStream(isr));
     }
 
-    private void refill() throws IOException {
-        readByte = isr.read(charBuffer);
+    public XMLLexer(Path path) throws IOException {
+        source = new XMLMappedSource(FileChannel.open(path, StandardOpenOption.READ), true);
     }
 
-    public XMLToken nextToken() throws IOException {
-        if (isr == null || (pos >= readByte && readByte != -1)) {
-            pos = 0;
-            refill();
-        }
+    public XMLLexer(FileChannel channel) throws IOException {
+        source = new XMLMappedSource(channel, false);
+    }
+
+    XMLLexer(XMLSource source) {
+        this.source = source;
+    }
 
-        else if (readByte == -1) {
-            token.setType(XMLTokenConstants.END_OF_FILE);
-            token.setStringBuffer(new byte[]{'n', 'u', 'l', 'l'});
-            token.setCharStringBuffer(null);
-            token.setLength(4);
-            return token;
+    /**
+     * Returns a stream of the UTF-8 bytes of {@code is}.
+     */
+    static InputStream utf8(InputStream is, Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII))
+            return is;
+        return new XMLEncodingInputStream(new InputStreamReader(is, charset));
+    }
+
+    XMLSource getSource() {
+        return source;
+    }
+
+    /**
+     * Starts over on {@code source}, which may be the current one after it
+     * was reset. The token storage and the settings are kept, a different
+     * old source is closed.
+     */
+    void setSource(XMLSource source) throws IOException {
+        setSource(source, 0);
+        setDoctypeEntities(null);
+        expandedBytes = 0;
+    }
+
+    /**
+     * Continues the current document on {@code source}, whose first byte is
+     * at {@code offset} in the input. Like {@link #setSource(XMLSource)},
+     * but the entities declared in the DOCTYPE so far stay declared.
+     */
+    void setSource(XMLSource source, long offset) throws IOException {
+        if (metrics != null) {
+            endMetrics();
+            metrics.clear();
         }
+        if (source != this.source) {
+            source.bufferSize = this.source.bufferSize;
+            this.source.close();
+            this.source = source;
+        }
+        byteBuffer = null;
+        readByte = 0;
+        pos = 0;
+        this.offset = offset;
+        tagStart = -1;
+        endOfInput = false;
+        started = false;
+        state = XMLLexerConstants.OUT;
+        isStringBufferFull = false;
+        splitTailLength = 0;
+        isNameRead = false;
+        skippedDepth = 0;
+        attributeStart = -1;
+        mark = -1;
+    }
 
-        while (pos < readByte) {
-            checkForRefill();
-            if (pos == -1) pos = 0;
-            // charBuffer[pos-2] = last char
-            // character =         char at the moment
-            // charBuffer[pos] =   next char
-            char character = charBuffer[pos++];
+    /**
+     * Sets the size of the input buffer used for streams. Has no effect on
+     * memory-mapped input. Must be called before the first token is read.
+     */
+    public void setBufferSize(int bufferSize) {
+        checkNotStarted();
+        if (bufferSize < 16)
+            throw new IllegalArgumentException("Buffer size must be at least 16 bytes");
+        source.bufferSize = bufferSize;
+    }
+
+    /**
+     * Sets the initial size of the token storage and the size it may grow
+     * to. Text longer than the maximum is returned in several parts, any
+     * other token longer than it is an error. Must be called before the
+     * first token is read.
+     */
+    /**
+     * Sets how many bytes entity references may add to a document beyond
+     * their own length, counted as they are expanded in the DOCTYPE, text
+     * and attribute values.
+     */
+    void setEntityExpansionLimit(long limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("Entity expansion limit must not be negative");
+        entityExpansionLimit = limit;
+    }
+
+    /**
+     * Puts the buffer sizes and the entity settings back to their defaults
+     * and drops the entities declared on the lexer. The token storage is
+     * kept unless it is larger than the default maximum.
+     */
+    void restoreDefaults() {
+        checkNotStarted();
+        source.bufferSize = XMLSource.DEFAULT_BUFFER_SIZE;
+        maxTokenSize = DEFAULT_MAX_TOKEN_SIZE;
+        if (byteString.length > maxTokenSize) byteString = new byte[DEFAULT_TOKEN_SIZE];
+        entities = XMLEntityTable.PREDEFINED;
+        entityExpansionLimit = DEFAULT_ENTITY_EXPANSION_LIMIT;
+    }
+
+    public void setTokenBufferSize(int initialSize, int maxSize) {
+        checkNotStarted();
+        if (initialSize < 16 || maxSize < initialSize)
+            throw new IllegalArgumentException("Token buffer sizes must be at least 16 bytes and initial <= max");
+        byteString = new byte[initialSize];
+        maxTokenSize = maxSize;
+    }
+
+    public XMLToken nextToken() throws IOException {
+        attributeStart = -1;
+        return readToken();
+    }
+
+    private XMLToken readToken() throws IOException {
+        started = true;
+
+        while (true) {
+            // Continuation of text that did not fit in the token storage
+            if (state == XMLLexerConstants.CONTENT)
+                return content();
+
+            int character = read();
+            if (character == -1) {
+                return setToken(XMLTokenConstants.END_OF_FILE, NULL_BYTES, 4);
+            }
 
             // --- Return open tag, end tag, comment, doctype, cdata and content ---
             if (state == XMLLexerConstants.OUT) {
-                checkForRefill();
-                // --- Open tag processing instruction ---
-                if (character == '<' && charBuffer[pos] == '?') {
-                    state = XMLLexerConstants.TAG;
-                    pos++;
+                if (character == '<') {
+                    int next = peek(0);
 
-                    token.setType(XMLTokenConstants.PROCESSING_INSTRUCTION_OPEN);
-                    token.setStringBuffer(new byte[]{'<', '?'});
-                    token.setCharStringBuffer(null);
-                    token.setLength(2);
-                    return token;
-                }
+                    // --- End tag ---
+                    if (next == '/') {
+                        pos++;
+                        return endTag();
+                    }
+
+                    // --- Open tag processing instruction ---
+                    if (next == '?') {
+                        pos++;
+                        state = XMLLexerConstants.TAG;
+                        isNameRead = false;
+                        return setToken(XMLTokenConstants.PROCESSING_INSTRUCTION_OPEN, PI_OPEN_BYTES, 2);
+                    }
+
+                    // --- Comment, doctype and CData ---
+                    if (next == '!') {
+                        int keyword = peek(1);
+                        // --- Comment ---
+                        if (keyword == '-' && peek(2) == '-') {
+                            pos += 3;
+                            return comment();
+                        }
+                        // --- CData ---
+                        if (keyword == '[') {
+                            skip(8);
+                            return cdata();
+                        }
+                        // 65 - 'A'
+                        // --- Doctype ---
+                        if (keyword >= 65) {
+                            pos++;
+                            return doctype();
+                        }
+                        return setToken(XMLTokenConstants.PROCESSING_INSTRUCTION_OPEN, DECLARATION_OPEN_BYTES, 2);
+                    }
 
-                // Clear byteString
-                if (lastCharIndex != 0) {
-                    Arrays.fill(charString, (char) 0);
+                    // --- Open tag ---
+                    state = XMLLexerConstants.TAG;
+                    isNameRead = false;
+                    tagStart = offset + pos - 1;
+                    return setToken(XMLTokenConstants.TAG_OPEN, TAG_OPEN_BYTES, 1);
                 }
 
-                // --- End tag ---
-                if (character == '<' && charBuffer[pos] == '/') {
-                    int charIndex = 0;
-                    checkForRefill(pos+1);
-                    character = charBuffer[pos+1];
-                    pos+=2;
+                // 32 - whitespace
+                // Control characters between markup are dropped, so is
+                // leading whitespace when text is trimmed
+                if (character < 32 || (trim && character == 32)) continue;
 
-                    while (character != '>') {
-                        checkForRefill();
+                // --- Content ---
+                pos--;
+                return content();
+            }
 
-                        charString[charIndex++] = character;
-                        character = charBuffer[pos++];
-                    }
+            // --- Return tag name, attribute name, attribute value, equal and close tag ---
+            if (state == XMLLexerConstants.TAG) {
+                // 32 - whitespace
+                if (character <= 32) continue;
 
-                    token.setType(XMLTokenConstants.END_TAG);
-                    token.setStringBuffer(null);
-                    token.setCharStringBuffer(charString);
-                    token.setLength(charIndex);
-                    return token;
+                // --- Equal ---
+                if (character == '=')
+                    return setToken(XMLTokenConstants.EQUAL, EQUAL_BYTES, 1);
+
+                // --- Close tag of normal, self closed and processing instruction tags ---
+                if (character == '>') {
+                    state = XMLLexerConstants.OUT;
+                    return setToken(XMLTokenConstants.TAG_CLOSE, TAG_CLOSE_BYTES, 1);
+                }
+                if (character == '/' && peek(0) == '>') {
+                    pos++;
+                    state = XMLLexerConstants.OUT;
+                    return setToken(XMLTokenConstants.TAG_CLOSE, SELF_CLOSE_BYTES, 2);
+                }
+                if (character == '?' && peek(0) == '>') {
+                    pos++;
+                    state = XMLLexerConstants.OUT;
+                    return setToken(XMLTokenConstants.PROCESSING_INSTRUCTION_CLOSE, PI_CLOSE_BYTES, 2);
                 }
 
-                // --- Comment, doctype and CData ---
-                if (character == '<' && charBuffer[pos] == '!') {
-                    // 65 - 'A'
-                    // --- Doctype ---
-                    if (charBuffer[pos+1] >= 65 && charBuffer[pos+1] != '[') {
-                        int charIndex = 0;
+                // --- Attribute value ---
+                if (character == '"' || character == '\'')
+                    return attributeValue(character);
 
-                        // Skip DOCTYPE keyword
-                        while (charBuffer[pos++] != ' ') {}
-                        character = charBuffer[pos++];
+                // --- Tag name and attribute name ---
+                pos--;
+                return name();
+            }
+        }
+    }
 
-                        while (character != '>') {
-                            checkForRefill();
+    /**
+     * Skips the content of the element whose start tag was just read,
+     * tracking only the nesting depth, and returns its END_TAG token.
+     */
+    public XMLToken skipElement() throws IOException {
+        attributeStart = -1;
+        int depth = 1;
 
-                            charString[charIndex++] = character;
-                            character = charBuffer[pos++];
-                        }
+        while (true) {
+            if (!skipTo('<')) unexpectedEnd();
+            pos++;
 
-                        lastCharIndex = charIndex;
+            int next = peekRequired(0);
+            // --- End tag ---
+            if (next == '/') {
+                pos++;
+                if (--depth == 0) return endTag();
+                if (!skipTo('>')) unexpectedEnd();
+                pos++;
+            }
+            // --- Comment, doctype and CData ---
+            else if (next == '!') skipDeclaration();
+            // --- Processing instruction ---
+            else if (next == '?') skipPast(PI_CLOSE_BYTES);
+            // --- Open tag ---
+            else if (skipStartTag()) depth++;
+        }
+    }
 
-                        token.setType(XMLTokenConstants.DOCTYPE);
-                        token.setStringBuffer(null);
-                        token.setCharStringBuffer(charString);
-                        token.setLength(charIndex);
-                        return token;
-                    }
+    /**
+     * Scans ahead for a start tag named {@code name} without tokenizing
+     * anything before it. On success the lexer is positioned on the tag name,
+     * as if TAG_OPEN was just returned.
+     *
+     * @return false if the document ends first
+     */
+    public boolean skipToStartTag(byte[] name) throws IOException {
+        attributeStart = -1;
+        started = true;
+        skippedDepth = 0;
+
+        while (skipTo('<')) {
+            pos++;
 
-                    // --- Comment ---
-                    if (charBuffer[pos+1] == '-') {
-                        int charIndex = 0;
+            int next = peek(0);
+            if (next == '/') {
+                skippedDepth--;
+                continue;
+            }
+            if (next == '!') {
+                skipDeclaration();
+                continue;
+            }
+            if (next == '?') {
+                skipPast(PI_CLOSE_BYTES);
+                continue;
+            }
 
-                        // Skip comment start <!--
-                        pos += 3;
-                        character = charBuffer[pos++];
+            int length = name.length;
+            int i = 0;
+            while (i < length && peek(i) == (name[i] & 0xFF)) i++;
+
+            // 32 - whitespace
+            int terminator = i == length ? peek(length) : -1;
+            if (terminator != -1 && (terminator <= 32 || terminator == '>' || terminator == '/')) {
+                state = XMLLexerConstants.TAG;
+                isNameRead = false;
+                tagStart = offset + pos - 1;
+                return true;
+            }
 
-                        if (trim) {
-                            // 32 - whitespace
-                            // Remove spaces and special symbols before comment string
-                            while (character <= 32) character = charBuffer[pos++];
-                        }
+            if (skipStartTag()) skippedDepth++;
+        }
 
-                        // Add characters until next characters is -->
-                        while (true) {
-                            checkForRefill();
+        state = XMLLexerConstants.OUT;
+        return false;
+    }
 
-                            if (charBuffer[pos] == '-' && charBuffer[pos+1] == '-' && charBuffer[pos+2] == '>') break;
+    /**
+     * Returns how much the element depth changed over the tags passed by the
+     * last {@link #skipToStartTag(byte[])}.
+     */
+    int getSkippedDepth() {
+        return skippedDepth;
+    }
 
-                            charString[charIndex++] = character;
-                            character = charBuffer[pos++];
-                        }
-                        charString[charIndex++] = charBuffer[pos-1];
+    /**
+     * Returns the offset in the input of the next byte to be read.
+     */
+    long getOffset() {
+        return offset + pos;
+    }
 
-                        if (trim) {
-                            // Remove spaces and special symbols after string
-                            if (charString[charIndex] <= 32)
-                                while (charString[--charIndex] <= 32) {}
-                            charIndex++;
-                        }
+    /**
+     * Returns the offset in the input of the '<' of the last start tag read,
+     * -1 before the first one.
+     */
+    long getTagStart() {
+        return tagStart;
+    }
 
-                        pos += 3;
-                        lastCharIndex = charIndex;
+    /**
+     * Returns the start of a UTF-8 sequence cut off from the last text
+     * token, or null if the text was not split and the lexer is between
+     * tokens.
+     */
+    byte[] getSplitText() {
+        if (state != XMLLexerConstants.CONTENT) return null;
+        return Arrays.copyOf(splitTail, splitTailLength);
+    }
 
-                        token.setType(XMLTokenConstants.COMMENT);
-                        token.setStringBuffer(null);
-                        token.setCharStringBuffer(charString);
-                        token.setLength(charIndex);
-                        return token;
-                    }
+    /**
+     * Continues text that was split, see {@link #getSplitText()}.
+     */
+    void resumeSplitText(byte[] tail) {
+        state = XMLLexerConstants.CONTENT;
+        isStringBufferFull = true;
+        System.arraycopy(tail, 0, splitTail, 0, tail.length);
+        splitTailLength = tail.length;
+    }
 
-                    // --- CData ---
-                    if (charBuffer[pos+1] == '[') {
-                        int charIndex = 0;
+    private void skipDeclaration() throws IOException {
+        // pos is on '!'
+        if (peek(1) == '-' && peek(2) == '-') {
+            pos += 3;
+            skipPast(COMMENT_CLOSE_BYTES);
+        } else if (peek(1) == '[') {
+            skipPast(CDATA_CLOSE_BYTES);
+        } else if (peek(1) >= 65) {
+            // 65 - 'A'
+            // A DOCTYPE is read for its entity declarations
+            pos++;
+            declareEntities(readDoctype());
+        } else {
+            if (!skipTo('>')) unexpectedEnd();
+            pos++;
+        }
+    }
 
-                        // Skip cdata start <![CDATA[ keyword
-                        pos += 8;
-                        character = charBuffer[pos++];
+    /**
+     * Skips a start tag up to its '>', stepping over quoted attribute values.
+     *
+     * @return false if the tag is self-closing
+     */
+    private boolean skipStartTag() throws IOException {
+        int last = 0;
+
+        while (true) {
+            int end = SCANNER.findTagEnd(byteBuffer, pos, readByte);
+            if (end > pos) last = byteBuffer.get(end - 1) & 0xFF;
+            pos = end;
+            if (pos == readByte) {
+                if (!ensure(1)) unexpectedEnd();
+                continue;
+            }
 
-                        // 32 - whitespace
-                        // Remove spaces and special symbols before comment string
-                        while (character <= 32) character = charBuffer[pos++];
+            int character = byteBuffer.get(pos++) & 0xFF;
+            if (character == '>') return last != '/';
 
-                        // Add characters until next characters is ]]>
-                        while (true) {
-                            checkForRefill();
-                            if (charBuffer[pos] == ']' && charBuffer[pos+1] == ']' && charBuffer[pos+2] == '>') break;
+            // Quoted attribute value
+            if (!skipTo(character)) unexpectedEnd();
+            pos++;
+            last = character;
+        }
+    }
 
-                            charString[charIndex++] = character;
-                            character = charBuffer[pos++];
-                        }
-                        charString[charIndex++] = charBuffer[pos-1];
+    private void skipPast(byte[] terminator) throws IOException {
+        while (true) {
+            if (!skipTo(terminator[0])) unexpectedEnd();
 
-                        if (trim) {
-                            // Remove spaces and special symbols after string
-                            if (charString[charIndex] <= 32)
-                                while (charString[--charIndex] <= 32) {}
-                            charIndex++;
-                        }
+            int i = 1;
+            while (i < terminator.length && peek(i) == terminator[i]) i++;
+            if (i == terminator.length) {
+                pos += i;
+                return;
+            }
+            pos++;
+        }
+    }
 
-                        lastCharIndex = charIndex;
-                        pos += 3;
+    /**
+     * Reads the rest of a start tag after its name without tokenizing the
+     * attributes, and returns its TAG_CLOSE token. The attributes stay in
+     * the buffer until the next token is read, for
+     * {@link #nextAttributeToken()}.
+     */
+    XMLToken skipAttributes() throws IOException {
+        attributeStart = pos;
+        boolean selfClosing = !skipStartTag();
+        attributeEnd = pos;
+        state = XMLLexerConstants.OUT;
+        return selfClosing
+                ? setToken(XMLTokenConstants.TAG_CLOSE, SELF_CLOSE_BYTES, 2)
+                : setToken(XMLTokenConstants.TAG_CLOSE, TAG_CLOSE_BYTES, 1);
+    }
 
-                        token.setType(XMLTokenConstants.CDATA);
-                        token.setStringBuffer(null);
-                        token.setCharStringBuffer(charString);
-                        token.setLength(charIndex);
-                        return token;
-                    }
+    /**
+     * Returns the next attribute token of the start tag passed by
+     * {@link #skipAttributes()}, ending with its TAG_CLOSE, after which the
+     * lexer is back at the end of the tag.
+     */
+    XMLToken nextAttributeToken() throws IOException {
+        if (state == XMLLexerConstants.OUT) {
+            pos = attributeStart;
+            state = XMLLexerConstants.TAG;
+            isNameRead = true;
+        }
+        XMLToken attribute = readToken();
+        if (attribute.getType() == XMLTokenConstants.TAG_CLOSE) pos = attributeEnd;
+        return attribute;
+    }
 
-                    token.setType(XMLTokenConstants.PROCESSING_INSTRUCTION_OPEN);
-                    token.setStringBuffer(new byte[]{'<', '!'});
-                    token.setCharStringBuffer(null);
-                    token.setLength(2);
-                    return token;
-                }
+    /**
+     * Moves pos to the next occurrence of {@code b}.
+     *
+     * @return false if the input ends first
+     */
+    private boolean skipTo(int b) throws IOException {
+        while (true) {
+            int index = SCANNER.indexOf(byteBuffer, pos, readByte, b);
+            if (index < readByte) {
+                pos = index;
+                return true;
+            }
 
-                // --- Open tag ---
-                if (character == '<') {
-                    state = XMLLexerConstants.TAG;
+            pos = readByte;
+            if (!ensure(1)) return false;
+        }
+    }
 
-                    token.setType(XMLTokenConstants.TAG_OPEN);
-                    token.setStringBuffer(new byte[]{'<'});
-                    token.setCharStringBuffer(null);
-                    token.setLength(1);
-                    return token;
-                }
+    private XMLToken endTag() throws IOException {
+        int charIndex = 0;
+        int character;
 
-                // After END_TAG state is OUT, so this block needs to add text after it
-                // <tag>Text with <b>bold</b> font</tag>
-                //                         ^    ^
-                //                    END_TAG  CONTENT
-                // 32 - whitespace
-                // --- Content ---
-                if (character >= 32) {
-                    pos--;
-                    state = XMLLexerConstants.CONTENT;
-                    continue;
-                }
-            }
+        while ((character = readRequired()) != '>') {
+            // 32 - whitespace
+            if (character <= 32) continue;
+            charIndex = put(character, charIndex);
+        }
 
-            // --- Return tag name, attribute name, attribute value, equal and close tag ---
-            if (state == XMLLexerConstants.TAG) {
-                // --- Equal ---
-                if (character == '=') {
-                    token.setType(XMLTokenConstants.EQUAL);
-                    token.setStringBuffer(new byte[]{'='});
-                    token.setCharStringBuffer(null);
-                    token.setLength(1);
-                    return token;
-                }
+        state = XMLLexerConstants.OUT;
+        return setToken(XMLTokenConstants.END_TAG, byteString, charIndex);
+    }
 
-                // --- Close tag of normal, self closed and processing instruction tags ---
-                if (character == '>' || (character == '/' && charBuffer[pos] == '>') || (character == '?' && charBuffer[pos] == '>')) {
-                    // --- Normal ---
-                    if (character == '>') {
-                        state = XMLLexerConstants.CONTENT;
-
-                        token.setType(XMLTokenConstants.TAG_CLOSE);
-                        token.setStringBuffer(new byte[]{'>'});
-                        token.setCharStringBuffer(null);
-                        token.setLength(1);
-                        return token;
-                    }
-                    state = XMLLexerConstants.OUT;
-                    pos++;
-                    // --- Self closed ---
-                    if (character == '/') {
-                        token.setType(XMLTokenConstants.TAG_CLOSE);
-                        token.setStringBuffer(new byte[]{'/', '>'});
-                        token.setCharStringBuffer(null);
-                        token.setLength(2);
-                        return token;
-                    }
-                    // --- Processing instruction ---
-                    token.setType(XMLTokenConstants.PROCESSING_INSTRUCTION_CLOSE);
-                    token.setStringBuffer(new byte[]{'?', '>'});
-                    token.setCharStringBuffer(null);
-                    token.setLength(2);
-                    return token;
-                }
+    private XMLToken name() throws IOException {
+        int charIndex = 0;
+        int character;
 
-                // --- End tag ---
-                if (character == '<' && charBuffer[pos] == '/') {
-                    int charIndex = 0;
+        // 32 - whitespace
+        while ((character = peek(0)) > 32 && character != '=' && character != '>'
+                && character != '/' && character != '?') {
+            pos++;
+            charIndex = put(character, charIndex);
+        }
+        if (character == -1) unexpectedEnd();
 
-                    while (character != '>') {
-                        checkForRefill();
+        // The first name in a tag is the tag name, the rest are attributes
+        int type = isNameRead ? XMLTokenConstants.ATTR_NAME : XMLTokenConstants.NAME;
+        isNameRead = true;
+        return setToken(type, byteString, charIndex);
+    }
 
-                        charString[charIndex++] = character;
-                        character = charBuffer[pos++];
-                    }
-                    charString[charIndex++] = character;
+    private XMLToken attributeValue(int quote) throws IOException {
+        int charIndex = 0;
+
+        while (true) {
+            // Copy the run up to the next quote or entity at once
+            int end = SCANNER.findAttributeEnd(byteBuffer, pos, readByte, quote);
+            int run = end - pos;
+            if (run > 0) {
+                if (charIndex + run > byteString.length) growTokenBuffer(charIndex + run, true);
+                byteBuffer.get(pos, byteString, charIndex, run);
+                charIndex += run;
+                pos = end;
+            }
+            if (pos == readByte) {
+                if (!ensure(1)) unexpectedEnd();
+                continue;
+            }
 
-                    state = XMLLexerConstants.OUT;
+            if ((byteBuffer.get(pos++) & 0xFF) == quote) break;
+            // Entity check
+            charIndex = entityChange(charIndex, false);
+        }
 
-                    token.setType(XMLTokenConstants.END_TAG);
-                    token.setStringBuffer(null);
-                    token.setCharStringBuffer(charString);
-                    token.setLength(charIndex);
-                    return token;
-                }
+        return setToken(XMLTokenConstants.ATTR_VALUE, byteString, charIndex);
+    }
 
-                // 32 - whitespace
-                // --- Tag name ---
-                if ((character != '"' && character != '\'') && character > 32 && isLastAttribute) {
-                    int charIndex = 0;
+    private XMLToken content() throws IOException {
+        int charIndex = 0;
 
-                    while (character != ' ' && character != '>') {
-                        checkForRefill();
+        // 32 - whitespace
+        // Remove spaces and special symbols before string
+        if (trim && !isStringBufferFull) skipWhitespace();
 
-                        charString[charIndex++] = character;
-                        character = charBuffer[pos++];
+        isStringBufferFull = false;
+        if (splitTailLength > 0) {
+            System.arraycopy(splitTail, 0, byteString, 0, splitTailLength);
+            charIndex = splitTailLength;
+            splitTailLength = 0;
+        }
+        while (true) {
+            // Copy the run up to the next markup, entity or control character at once
+            int end = SCANNER.findContentEnd(byteBuffer, pos, readByte);
+            int run = end - pos;
+            if (run > 0) {
+                if (charIndex + run > byteString.length && !growTokenBuffer(charIndex + run, false)) {
+                    // Split text that does not fit in the token storage, never
+                    // in the middle of a UTF-8 sequence
+                    run = byteString.length - charIndex;
+                    while (run > 0 && (byteBuffer.get(pos + run) & 0xC0) == 0x80) run--;
+                    byteBuffer.get(pos, byteString, charIndex, run);
+                    charIndex += run;
+                    pos += run;
+                    if (run == 0) charIndex = cutIncompleteSequence(charIndex);
+                    isStringBufferFull = true;
+                    break;
+                }
+                byteBuffer.get(pos, byteString, charIndex, run);
+                charIndex += run;
+                pos = end;
+            }
+            if (pos == readByte) {
+                if (!ensure(1)) break;
+                continue;
+            }
 
-                        if (character == '/') {
-                            break;
-                        }
-                    }
+            int character = byteBuffer.get(pos) & 0xFF;
+            if (character == '<') break;
 
+            // Entity check
+            if (character == '&') {
+                if (charIndex + 4 > byteString.length && !growTokenBuffer(charIndex + 4, false)) {
+                    isStringBufferFull = true;
+                    break;
+                }
+                pos++;
+                int next = entityChange(charIndex, true);
+                if (next == -1) {
+                    // Split before a replacement text that does not fit either
                     pos--;
-
-                    token.setType(XMLTokenConstants.NAME);
-                    token.setStringBuffer(null);
-                    token.setCharStringBuffer(charString);
-                    token.setLength(charIndex);
-                    return token;
+                    isStringBufferFull = true;
+                    break;
                 }
+                charIndex = next;
+                continue;
+            }
 
-                // --- Attribute name and close tag ---
-                if (character == ' ' || character >= 65) {
-                    int charIndex = 0;
-
-                    // 47 - '/'
-                    while (character < 47) {
-                        checkForRefill();
-
-                        character = charBuffer[pos++];
-                        if (character == '/' || character == '>') {
-                            state = XMLLexerConstants.OUT;
-                            if (character == '/') {
-                                pos++;
-
-                                token.setType(XMLTokenConstants.TAG_CLOSE);
-                                token.setStringBuffer(new byte[]{'/', '>'});
-                                token.setCharStringBuffer(null);
-                                token.setLength(2);
-                                return token;
-                            }
-
-                            token.setType(XMLTokenConstants.TAG_CLOSE);
-                            token.setStringBuffer(null);
-                            token.setCharStringBuffer(new char[]{character});
-                            token.setLength(1);
-                            return token;
-                        }
-                    }
+            // Control characters are dropped from text
+            pos++;
+        }
 
-                    while (character != '=') {
-                        checkForRefill();
+        // Remove spaces and special symbols after string
+        if (trim && !isStringBufferFull)
+            charIndex = trimEnd(charIndex);
 
-                        charString[charIndex++] = character;
-                        character = charBuffer[pos++];
+        state = isStringBufferFull ? XMLLexerConstants.CONTENT : XMLLexerConstants.OUT;
+        if (charIndex == 0 && !isStringBufferFull) return nextToken();
 
-                        if (character == '=') {
-                            pos--;
-                        }
-                    }
+        return setToken(XMLTokenConstants.CONTENT, byteString, charIndex);
+    }
 
-                    token.setType(XMLTokenConstants.ATTR_NAME);
-                    token.setStringBuffer(null);
-                    token.setCharStringBuffer(charString);
-                    token.setLength(charIndex);
-                    return token;
-                }
+    private XMLToken comment() throws IOException {
+        int charIndex = 0;
 
-                // --- Attribute value ---
-                if (character == '"' || character == '\'') {
-                    int charIndex = 0;
-                    character = charBuffer[pos++];
+        // 32 - whitespace
+        // Remove spaces and special symbols before comment string
+        if (trim) skipWhitespace();
 
-                    while (character != '"' && character != '\'') {
-                        checkForRefill(pos+1);
+        // Add characters until next characters is -->
+        charIndex = copyUntil(COMMENT_CLOSE_BYTES, charIndex);
 
-                        // Entity check
-                        if (character == '&')
-                            charString[charIndex++] = entityChange(charBuffer, pos);
-                        else
-                            charString[charIndex++] = character;
+        // Remove spaces and special symbols after string
+        if (trim) charIndex = trimEnd(charIndex);
 
-                        character = charBuffer[pos++];
-                    }
+        return setToken(XMLTokenConstants.COMMENT, byteString, charIndex);
+    }
 
-                    checkForRefill();
-                    isLastAttribute = !(charBuffer[pos] >= 65 || charBuffer[pos] == ' ');
-                    if (charBuffer[pos] == ' ') {
-                        checkForRefill(pos+1);
-                        while (charBuffer[pos++] <= 32) {}
-                        checkForRefill();
-                        isLastAttribute = !(charBuffer[pos] >= 65);
-                        pos--;
-                    }
+    private XMLToken cdata() throws IOException {
+        int charIndex = 0;
 
-                    token.setType(XMLTokenConstants.ATTR_VALUE);
-                    token.setStringBuffer(null);
-                    token.setCharStringBuffer(charString);
-                    token.setLength(charIndex);
-                    return token;
-                }
-            }
+        // 32 - whitespace
+        // Remove spaces and special symbols before cdata string
+        skipWhitespace();
 
-            // --- Content ---
-            if (state == XMLLexerConstants.CONTENT) {
-                if (character != '<') {
-                    int charIndex = 0;
-
-                    // Clear charString
-                    if (lastCharIndex != 0)
-                        Arrays.fill(charString, (char) 0);
-
-                    if (trim && !isStringBufferFull) {
-                        // 32 - whitespace
-                        // Remove spaces and special symbols before string
-                        while (character <= 32) {
-                            checkForRefill(pos+1);
-                            // --- Tag open ---
-                            if (charBuffer[pos] == '<' && (charBuffer[pos+1] != '!' && charBuffer[pos+1] != '/')) {
-                                pos++;
-                                state = XMLLexerConstants.TAG;
-
-                                token.setType(XMLTokenConstants.TAG_OPEN);
-                                token.setStringBuffer(new byte[]{'<'});
-                                token.setCharStringBuffer(null);
-                                token.setLength(1);
-                                return token;
-                            }
-                            // Check for <! keyword
-                            else if (charBuffer[pos] == '<') {
-                                state = XMLLexerConstants.OUT;
-
-                                token.setType(XMLTokenConstants.TAG_OPEN);
-                                token.setStringBuffer(null);
-                                token.setCharStringBuffer(new char[]{'<', charBuffer[pos+1]});
-                                token.setLength(2);
-                                return token;
-                            }
-                            character = charBuffer[pos++];
-                        }
-                    }
+        // Add characters until next characters is ]]>
+        charIndex = copyUntil(CDATA_CLOSE_BYTES, charIndex);
 
-                    checkForRefill(pos+1);
-                    // Skip if there's <!
-                    if (charBuffer[pos] == '<' && charBuffer[pos+1] == '!') continue;
+        // Remove spaces and special symbols after string
+        if (trim) charIndex = trimEnd(charIndex);
 
-                    while (character != '<') {
-                        checkForRefill();
+        return setToken(XMLTokenConstants.CDATA, byteString, charIndex);
+    }
 
-                        if (charIndex == stringBufferSize - 1) {
-                            isStringBufferFull = true;
-                            break;
-                        } else {
-                            isStringBufferFull = false;
-                        }
+    /**
+     * Copies the bytes up to {@code terminator} into the token storage, a
+     * run without its first byte at once, and moves past it.
+     */
+    private int copyUntil(byte[] terminator, int charIndex) throws IOException {
+        while (true) {
+            int end = SCANNER.indexOf(byteBuffer, pos, readByte, terminator[0]);
+            int run = end - pos;
+            if (run > 0) {
+                if (charIndex + run > byteString.length) growTokenBuffer(charIndex + run, true);
+                byteBuffer.get(pos, byteString, charIndex, run);
+                charIndex += run;
+                pos = end;
+            }
+            if (pos == readByte) {
+                if (!ensure(1)) unexpectedEnd();
+                continue;
+            }
 
-                        if (character >= 32) {
-                            // Entity check
-                            if (character == '&') {
-                                checkForRefill(pos+1);
-                                charString[charIndex++] = entityChange(charBuffer, pos);
-                            }
-                            else {
-                                charString[charIndex++] = character;
-                            }
-                        }
+            int i = 1;
+            while (i < terminator.length && peek(i) == terminator[i]) i++;
+            if (i == terminator.length) {
+                pos += i;
+                return charIndex;
+            }
+            charIndex = put(byteBuffer.get(pos++) & 0xFF, charIndex);
+        }
+    }
 
-                        checkForRefill();
-                        character = charBuffer[pos++];
-                    }
+    private XMLToken doctype() throws IOException {
+        int charIndex = readDoctype();
+        declareEntities(charIndex);
+        return setToken(XMLTokenConstants.DOCTYPE, byteString, charIndex);
+    }
 
-                    if (trim && !isStringBufferFull) {
-                        // Remove spaces and special symbols after string
-                        if (charString[charIndex] <= 32) {
-                            while (charString[--charIndex] <= 32) {}
-                            charIndex++;
-                        }
-                    }
+    /**
+     * Reads a DOCTYPE after its "<!" into the token storage, without the
+     * keyword and the final '>'.
+     */
+    private int readDoctype() throws IOException {
+        int charIndex = 0;
+        int character;
+
+        // Skip DOCTYPE keyword
+        // 32 - whitespace
+        while (readRequired() > 32) {}
+        skipWhitespace();
+
+        // '>' inside quotes or the internal subset does not end it
+        int quote = 0;
+        boolean subset = false;
+        while ((character = readRequired()) != '>' || quote != 0 || subset) {
+            if (quote != 0) {
+                if (character == quote) quote = 0;
+            } else if (character == '"' || character == '\'') {
+                quote = character;
+            } else if (character == '[') {
+                subset = true;
+            } else if (character == ']') {
+                subset = false;
+            } else if (character == '<' && subset && peek(0) == '!' && peek(1) == '-' && peek(2) == '-') {
+                // Comments may hold quotes and brackets of their own
+                for (byte b : COMMENT_OPEN_BYTES) charIndex = put(b, charIndex);
+                pos += 3;
+                charIndex = copyUntil(COMMENT_CLOSE_BYTES, charIndex);
+                for (byte b : COMMENT_CLOSE_BYTES) charIndex = put(b, charIndex);
+                continue;
+            }
+            charIndex = put(character, charIndex);
+        }
+        return charIndex;
+    }
+
+    // --- Entities ---
+
+    /**
+     * Declares the general entities of the internal subset of the DOCTYPE
+     * held in the first {@code length} bytes of the token storage,
+     * {@code <!ENTITY name "value">}. Parameter and external entities are
+     * not read.
+     */
+    private void declareEntities(int length) throws IOException {
+        int i = 0;
+        int quote = 0;
+        boolean subset = false;
+
+        while (i < length) {
+            int character = byteString[i] & 0xFF;
+            if (quote != 0) {
+                if (character == quote) quote = 0;
+            } else if (character == '"' || character == '\'') {
+                quote = character;
+            } else if (character == '[') {
+                subset = true;
+            } else if (subset && startsWith(COMMENT_OPEN_BYTES, i, length)) {
+                i = indexOf(COMMENT_CLOSE_BYTES, i + COMMENT_OPEN_BYTES.length, length);
+                continue;
+            } else if (subset && startsWith(PI_OPEN_BYTES, i, length)) {
+                i = indexOf(PI_CLOSE_BYTES, i + PI_OPEN_BYTES.length, length);
+                continue;
+            } else if (subset && startsWith(ENTITY_BYTES, i, length)) {
+                i = declareEntity(i + ENTITY_BYTES.length, length);
+                continue;
+            }
+            i++;
+        }
+        // Entities declared on the reader only fill in names the DOCTYPE left free
+        if (documentEntities != null && entities != XMLEntityTable.PREDEFINED)
+            documentEntities.declareAll(entities);
+    }
 
-                    pos -= pos == 0 ? 0 : 1;
-                    lastCharIndex = charIndex;
-                    if (!isStringBufferFull)
-                        state = XMLLexerConstants.OUT;
+    /**
+     * Declares the entity whose declaration continues at {@code i}, and
+     * returns the index after it.
+     */
+    private int declareEntity(int i, int length) throws IOException {
+        // 32 - whitespace
+        while (i < length && (byteString[i] & 0xFF) <= 32) i++;
+        // Parameter entity
+        if (i < length && byteString[i] == '%') return i;
+
+        int nameStart = i;
+        while (i < length && (byteString[i] & 0xFF) > 32 && byteString[i] != '"' && byteString[i] != '\'') i++;
+        int nameEnd = i;
+        while (i < length && (byteString[i] & 0xFF) <= 32) i++;
+
+        // SYSTEM or PUBLIC, left to the outer loop
+        if (i == length || (byteString[i] != '"' && byteString[i] != '\'')) return i;
+        int quote = byteString[i++];
+        int valueStart = i;
+        while (i < length && byteString[i] != quote) i++;
+
+        if (nameEnd > nameStart) {
+            byte[] name = Arrays.copyOfRange(byteString, nameStart, nameEnd);
+            byte[] value = entityValue(valueStart, i, length);
+            if (documentEntities == null) {
+                doctypeEntities = new XMLEntityTable();
+                documentEntities = XMLEntityTable.PREDEFINED.copy();
+            }
+            doctypeEntities.declare(name, value);
+            documentEntities.declare(name, value);
+        }
+        return i + 1;
+    }
 
-                    token.setType(XMLTokenConstants.CONTENT);
-                    token.setStringBuffer(null);
-                    token.setCharStringBuffer(charString);
-                    token.setLength(lastCharIndex);
-                    return token;
+    /**
+     * Returns the replacement text of an entity value in the token storage,
+     * with its character references and references to entities declared
+     * before it replaced. It is built past {@code scratch}, the end of the
+     * DOCTYPE.
+     */
+    private byte[] entityValue(int from, int to, int scratch) throws IOException {
+        XMLEntityTable table = documentEntities != null ? documentEntities : entities;
+        int index = scratch;
+        int i = from;
+
+        while (i < to) {
+            int character = byteString[i] & 0xFF;
+            int end = character == '&' ? indexOf(';', i, to) : -1;
+            if (end != -1 && end > i + 1) {
+                if (byteString[i + 1] == '#') {
+                    int code = characterCode(i + 2, end);
+                    if (code != -1) {
+                        index = putCodePoint(code, index);
+                        i = end + 1;
+                        continue;
+                    }
                 } else {
-                    state = XMLLexerConstants.TAG;
-                    checkForRefill();
-                    if (charBuffer[pos] == '/' || charBuffer[pos] == '!') {
-                        pos--;
-                        state = XMLLexerConstants.OUT;
-                        if (charBuffer[pos] == '!') continue;
+                    int node = 0;
+                    for (int k = i + 1; k < end && node != -1; k++) node = table.child(node, byteString[k] & 0xFF);
+                    byte[] value = node == -1 ? null : table.getValue(node);
+                    if (value != null) {
+                        countExpansion(value.length - (end + 1 - i));
+                        for (byte b : value) index = put(b, index);
+                        i = end + 1;
+                        continue;
                     }
-
-                    token.setType(XMLTokenConstants.TAG_OPEN);
-                    token.setStringBuffer(new byte[]{'<'});
-                    token.setCharStringBuffer(null);
-                    token.setLength(1);
-                    return token;
                 }
             }
+            index = put(character, index);
+            i++;
         }
+        return Arrays.copyOfRange(byteString, scratch, index);
+    }
 
-        token.setType(XMLTokenConstants.END_OF_FILE);
-        token.setStringBuffer(new byte[]{'n', 'u', 'l', 'l'});
-        token.setCharStringBuffer(null);
-        token.setLength(4);
-        return token;
+    /**
+     * Returns the code point of the digits of a character reference in the
+     * token storage, after its "&#", or -1 if they are not one.
+     */
+    private int characterCode(int from, int to) {
+        int radix = 10;
+        if (byteString[from] == 'x') {
+            radix = 16;
+            from++;
+        }
+        if (from == to) return -1;
+
+        int code = 0;
+        for (int i = from; i < to; i++) {
+            int digit = digit(byteString[i] & 0xFF, radix);
+            if (digit == -1) return -1;
+            code = Math.min(code * radix + digit, 0x110000);
+        }
+        return isCharacter(code) ? code : 0xFFFD;
     }
 
-    private char entityChange(char[] buf, int pos) throws IOException {
-        // &amp;
-        if (buf[pos] == 'a' && buf[pos+1] == 'm' && buf[pos+2] == 'p') {
-            this.pos += 4;
-            return '&';
+    private boolean startsWith(byte[] prefix, int from, int to) {
+        if (to - from < prefix.length) return false;
+        return Arrays.equals(byteString, from, from + prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * Returns the index after {@code pattern} in the token storage, or
+     * {@code to} if it is not there.
+     */
+    private int indexOf(byte[] pattern, int from, int to) {
+        for (int i = from; i + pattern.length <= to; i++) {
+            if (startsWith(pattern, i, to)) return i + pattern.length;
         }
-        // &lt;
-        if (buf[pos] == 'l' && buf[pos+1] == 't') {
-            this.pos += 3;
-            return '<';
+        return to;
+    }
+
+    private int indexOf(int b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (byteString[i] == b) return i;
         }
-        // &gt;
-        if (buf[pos] == 'g' && buf[pos+1] == 't') {
-            this.pos += 3;
-            return '>';
+        return -1;
+    }
+
+    /**
+     * Replaces the reference after a '&' at pos with its text. A '&' that
+     * starts no known reference is kept as it is.
+     *
+     * @param split whether the text may be split before a replacement text
+     *              that does not fit in the token storage after it
+     * @return the new end of the text, or -1 if it is to be split
+     */
+    private int entityChange(int charIndex, boolean split) throws IOException {
+        if (peek(0) == '#') return characterReference(charIndex);
+
+        // Walk the trie while peeking, up to the longest name declared
+        XMLEntityTable table = documentEntities != null ? documentEntities : entities;
+        int maxLength = table.getMaxNameLength();
+        int node = 0;
+        int length = 0;
+        int character;
+        while ((character = peek(length)) != ';') {
+            if (character == -1 || length == maxLength || (node = table.child(node, character)) == -1)
+                return put('&', charIndex);
+            length++;
         }
-        // &quot;
-        if (buf[pos] == 'q' && buf[pos+1] == 'u' && buf[pos+2] == 'o' && buf[pos+3] == 't') {
-            this.pos += 5;
-            return '"';
+        byte[] value = length == 0 ? null : table.getValue(node);
+        if (value == null) return put('&', charIndex);
+
+        // Only a replacement text longer than the whole storage is an error
+        if (charIndex + value.length > byteString.length
+                && !growTokenBuffer(charIndex + value.length, !split || charIndex == 0))
+            return -1;
+        countExpansion(value.length - (length + 2));
+        if (metrics != null) metrics.entityDecodes++;
+        pos += length + 1;
+        System.arraycopy(value, 0, byteString, charIndex, value.length);
+        return charIndex + value.length;
+    }
+
+    /**
+     * Adds the growth of one expanded reference to the document's total.
+     * Entities that refer to each other grow geometrically, a few hundred
+     * bytes of DOCTYPE could otherwise expand to gigabytes.
+     */
+    private void countExpansion(int growth) throws IOException {
+        if (growth <= 0) return;
+        expandedBytes += growth;
+        if (expandedBytes > entityExpansionLimit)
+            throw new IOException("Entity references expand to more than the limit of " + entityExpansionLimit + " bytes");
+    }
+
+    /**
+     * Replaces &#..; or &#x..; at pos. It is peeked at before anything is
+     * copied, a malformed reference only keeps its '&' and the rest is read
+     * as text, so it stays unchanged.
+     */
+    private int characterReference(int charIndex) throws IOException {
+        int length = 1;
+        int radix = 10;
+        if (peek(1) == 'x') {
+            radix = 16;
+            length++;
         }
-        // &apos;
-        if (buf[pos] == 'a' && buf[pos+1] == 'p' && buf[pos+2] == 'o' && buf[pos+3] == 's') {
-            this.pos += 5;
-            return '\'';
+
+        int code = 0;
+        int digits = 0;
+        int character;
+        int digit;
+        while ((character = peek(length)) != -1 && (digit = digit(character, radix)) != -1) {
+            // Clamped, so long runs of digits cannot overflow
+            code = Math.min(code * radix + digit, 0x110000);
+            digits++;
+            // Longer runs can only be padded with zeros, they are left as text
+            if (++length > MAX_REFERENCE_LENGTH) return put('&', charIndex);
         }
+        if (character != ';' || digits == 0) return put('&', charIndex);
 
-        // &#..;
-        if (buf[pos] == '#' && buf[pos+1] != 'x') {
-            pos++;
-            int codeSize = 0;
+        if (metrics != null) metrics.entityDecodes++;
+        pos += length + 1;
+        // Code points that are not XML characters become U+FFFD
+        return putCodePoint(isCharacter(code) ? code : 0xFFFD, charIndex);
+    }
 
-            while (buf.length > pos+1 && buf[pos++] != ';') codeSize++;
+    private static int digit(int character, int radix) {
+        if (character >= '0' && character <= '9') return character - '0';
+        if (radix == 16) {
+            if (character >= 'a' && character <= 'f') return character - 'a' + 10;
+            if (character >= 'A' && character <= 'F') return character - 'A' + 10;
+        }
+        return -1;
+    }
 
-            switch (codeSize) {
-                case 3 -> {
-                    this.pos += 5;
-                    return (char) ((buf[pos-4] - '0') * 100 + (buf[pos-3] - '0') * 10 + buf[pos-2] - '0');
-                }
-                case 2 -> {
-                    this.pos += 4;
-                    return (char) ((buf[pos-3] - '0') * 10 + buf[pos-2] - '0');
-                }
-                case 1 -> {
-                    this.pos += 3;
-                    return (char) (buf[pos-2] - '0');
-                }
-            }
+    /**
+     * Returns whether {@code code} may appear in an XML document, see the
+     * Char production of XML 1.0.
+     */
+    private static boolean isCharacter(int code) {
+        if (code < 0x20) return code == 0x9 || code == 0xA || code == 0xD;
+        return code <= 0xD7FF || (code >= 0xE000 && code <= 0xFFFD) || (code >= 0x10000 && code <= 0x10FFFF);
+    }
+
+    private XMLToken setToken(int type, byte[] value, int length) {
+        // Out of line, so setToken stays small enough to inline
+        if (metrics != null) countToken(type, length);
+        token.setType(type);
+        token.setStringBuffer(value);
+        token.setCharStringBuffer(null);
+        token.setLength(length);
+        return token;
+    }
+
+    private int put(int character, int charIndex) throws IOException {
+        if (charIndex == byteString.length) growTokenBuffer(charIndex + 1, true);
+        byteString[charIndex++] = (byte) character;
+        return charIndex;
+    }
+
+    private boolean growTokenBuffer(int required, boolean failIfFull) throws IOException {
+        if (required > maxTokenSize) {
+            if (failIfFull)
+                throw new IOException("Token is longer than the maximum of " + maxTokenSize + " bytes");
+            // Text is split, fill the largest storage allowed first
+            if (byteString.length < maxTokenSize)
+                byteString = Arrays.copyOf(byteString, maxTokenSize);
+            return false;
         }
+        int length = (int) Math.min(maxTokenSize, Math.max(required, byteString.length * 2L));
+        byteString = Arrays.copyOf(byteString, length);
+        return true;
+    }
 
-        // &#x..;
-        else if (buf[pos] == '#') {
-            pos += 2;
-            int codeSize = 0;
+    /**
+     * Moves a UTF-8 sequence left incomplete at the end of the token storage
+     * to the start of the next part of the text.
+     */
+    private int cutIncompleteSequence(int charIndex) {
+        int lead = charIndex - 1;
+        while (lead > 0 && (byteString[lead] & 0xC0) == 0x80) lead--;
+        int length = charIndex - lead;
+        if (lead == 0 || length > splitTail.length) return charIndex;
+
+        System.arraycopy(byteString, lead, splitTail, 0, length);
+        splitTailLength = length;
+        return lead;
+    }
 
-            while (buf[pos++] != ';') codeSize++;
+    private int trimEnd(int charIndex) {
+        // 32 - whitespace
+        while (charIndex > 0 && (byteString[charIndex - 1] & 0xFF) <= 32) charIndex--;
+        return charIndex;
+    }
 
-            switch (codeSize) {
-                case 2 -> {
-                    this.pos += 5;
-                    return (char) ((buf[pos-3] - (buf[pos-3] >= 65 ? '7' : '0')) * 16 +
-                                            (buf[pos-2] - (buf[pos-2] >= 65 ? '7' : '0')));
-                }
-                case 1 -> {
-                    this.pos += 4;
-                    return (char) (buf[pos-2] - (buf[pos-2] >= 65 ? '7' : '0'));
-                }
-            }
+    private int putCodePoint(int codePoint, int index) throws IOException {
+        if (index + 4 > byteString.length) growTokenBuffer(index + 4, true);
+
+        if (codePoint < 0x80) {
+            byteString[index++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            byteString[index++] = (byte) (0xC0 | (codePoint >> 6));
+            byteString[index++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            byteString[index++] = (byte) (0xE0 | (codePoint >> 12));
+            byteString[index++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            byteString[index++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            byteString[index++] = (byte) (0xF0 | (codePoint >> 18));
+            byteString[index++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            byteString[index++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            byteString[index++] = (byte) (0x80 | (codePoint & 0x3F));
         }
+        return index;
+    }
+
+    private void skipWhitespace() throws IOException {
+        int character;
+        // 32 - whitespace
+        while ((character = peek(0)) != -1 && character <= 32) pos++;
+    }
+
+    /**
+     * Returns the byte at {@code pos + offset} without consuming it, or -1 if
+     * the input ends before it.
+     */
+    private int peek(int offset) throws IOException {
+        if (pos + offset >= readByte && !ensure(offset + 1)) return -1;
+        return byteBuffer.get(pos + offset) & 0xFF;
+    }
+
+    private int peekRequired(int offset) throws IOException {
+        int character = peek(offset);
+        if (character == -1) unexpectedEnd();
+        return character;
+    }
+
+    private int read() throws IOException {
+        if (pos >= readByte && !ensure(1)) return -1;
+        return byteBuffer.get(pos++) & 0xFF;
+    }
 
-        return 0;
+    private int readRequired() throws IOException {
+        int character = read();
+        if (character == -1) unexpectedEnd();
+        return character;
     }
 
-    private void checkForRefill() throws IOException {
-        if (this.pos >= this.bufferSize) {
-            this.pos = 0;
+    private void skip(int count) throws IOException {
+        if (!ensure(count)) unexpectedEnd();
+        pos += count;
+    }
+
+    private void unexpectedEnd() throws IOException {
+        throw new IOException("Unexpected end of document");
+    }
+
+    /**
+     * Makes at least {@code count} bytes available from pos.
+     *
+     * @return false if the input ends first
+     */
+    private boolean ensure(int count) throws IOException {
+        while (pos + count > readByte) {
+            if (endOfInput) return false;
             refill();
         }
+        return true;
     }
 
-    private void checkForRefill(int pos) throws IOException {
-        if (pos >= this.bufferSize) {
-            this.pos = 0;
-            refill();
+    private void refill() throws IOException {
+        // Unread bytes, and marked ones, are carried over to the start of the buffer
+        int keep = mark == -1 ? pos : mark;
+        if (attributeStart != -1 && attributeStart < keep) keep = attributeStart;
+        int read = metrics == null ? source.fill(keep) : fillMeasured(keep);
+        byteBuffer = source.buffer;
+        readByte = source.limit;
+        pos -= keep;
+        offset += keep;
+        if (mark != -1) mark -= keep;
+        if (attributeStart != -1) {
+            attributeStart -= keep;
+            attributeEnd -= keep;
         }
+        if (read == -1) endOfInput = true;
+    }
+
+    private int fillMeasured(int keep) throws IOException {
+        metrics.begin();
+        // Characters are counted before their bytes are dropped
+        if (byteBuffer != null) metrics.countChars(byteBuffer, keep);
+        long start = System.nanoTime();
+        int read = source.fill(keep);
+        metrics.refillNanos += System.nanoTime() - start;
+        metrics.refills++;
+        metrics.charsCountedTo -= keep;
+        return read;
+    }
+
+    /**
+     * Collects {@link XMLMetrics} from now on, or stops when null.
+     */
+    void setMetrics(XMLMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns a snapshot of the metrics, which must be enabled.
+     */
+    XMLParseMetrics getMetrics() {
+        if (byteBuffer != null) metrics.countChars(byteBuffer, pos);
+        return new XMLParseMetrics(metrics, getOffset());
+    }
+
+    private void countToken(int type, int length) {
+        metrics.token(type, length);
+        if (type == XMLTokenConstants.END_OF_FILE) endMetrics();
+    }
+
+    private void endMetrics() {
+        if (byteBuffer != null) metrics.countChars(byteBuffer, pos);
+        metrics.end(getOffset());
+    }
+
+    /**
+     * Remembers the position and state before an event, so that
+     * {@link #reset()} can read it again once more input has arrived.
+     */
+    void mark() {
+        mark = pos;
+        markState = state;
+        markNameRead = isNameRead;
+        markStringBufferFull = isStringBufferFull;
+        markSplitTailLength = splitTailLength;
+        markExpandedBytes = expandedBytes;
+    }
+
+    void reset() {
+        pos = mark;
+        state = markState;
+        isNameRead = markNameRead;
+        isStringBufferFull = markStringBufferFull;
+        splitTailLength = markSplitTailLength;
+        expandedBytes = markExpandedBytes;
+    }
+
+    private void checkNotStarted() {
+        if (started)
+            throw new IllegalStateException("Buffer sizes must be set before parsing starts");
     }
 
     public boolean hasNext() {
-        return pos <= readByte;
+        return !endOfInput || pos < readByte;
     }
 
     public void trimText(boolean trim) {
         this.trim = trim;
     }
+
+    /**
+     * Returns the entities declared in the DOCTYPE of the current document,
+     * or null if it has none.
+     */
+    XMLEntityTable getDoctypeEntities() {
+        return doctypeEntities;
+    }
+
+    /**
+     * Continues a document whose DOCTYPE declared {@code doctypeEntities},
+     * which may be null.
+     */
+    void setDoctypeEntities(XMLEntityTable doctypeEntities) {
+        this.doctypeEntities = doctypeEntities;
+        documentEntities = null;
+        if (doctypeEntities != null) {
+            documentEntities = XMLEntityTable.PREDEFINED.copy();
+            documentEntities.declareAll(doctypeEntities);
+            if (entities != XMLEntityTable.PREDEFINED) documentEntities.declareAll(entities);
+        }
+    }
+
+    /**
+     * Declares a named entity for this and later documents, or replaces the
+     * text of one declared before. Entities declared in the DOCTYPE of a
+     * document win over it.
+     */
+    void declareEntity(byte[] name, byte[] value) {
+        if (entities == XMLEntityTable.PREDEFINED) entities = entities.copy();
+        entities.put(name, value);
+        if (documentEntities != null && doctypeEntities.get(name) == null) documentEntities.put(name, value);
+    }
+
+    boolean isTrimText() {
+        return trim;
+    }
+
+    public void close() throws IOException {
+        if (metrics != null) endMetrics();
+        source.close();
+    }
 }
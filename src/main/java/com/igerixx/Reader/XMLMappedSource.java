@@ -0,0 +1,80 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-maps a file and lets the lexer scan the mapping directly, so there
+ * is no heap copy and no read() call per buffer. Files that do not fit in
+ * one mapping are mapped in windows; a new window starts at the first byte
+ * the lexer still needs.
+ */
+class XMLMappedSource extends XMLSource {
+    private static final long WINDOW_SIZE = 1 << 30; // 1 Gb
+    private final FileChannel channel;
+    private boolean closeChannel;
+    // Exclusive end of the mapped range, -1 for the end of the file
+    private final long end;
+    private long windowStart;
+
+    XMLMappedSource(FileChannel channel, boolean closeChannel) {
+        this(channel, closeChannel, 0, -1);
+    }
+
+    /**
+     * Maps only {@code [start, end)} of the channel, e.g. one chunk of a file
+     * parsed in parallel.
+     */
+    XMLMappedSource(FileChannel channel, boolean closeChannel, long start, long end) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.end = end;
+        this.windowStart = start;
+    }
+
+    boolean isCloseChannel() {
+        return closeChannel;
+    }
+
+    /**
+     * Hands the channel over to another source, this one no longer closes it.
+     */
+    FileChannel takeChannel() {
+        closeChannel = false;
+        return channel;
+    }
+
+    /**
+     * Continues the mapping at {@code position} of the channel.
+     */
+    void seek(long position) {
+        windowStart = position;
+        buffer = null;
+        limit = 0;
+    }
+
+    @Override
+    int fill(int keep) throws IOException {
+        long start = windowStart + keep;
+        long loadedEnd = windowStart + limit;
+        long size = end == -1 ? channel.size() : end;
+        if (buffer != null && loadedEnd >= size) {
+            buffer = buffer.slice(keep, limit - keep);
+            windowStart = start;
+            limit -= keep;
+            return -1;
+        }
+
+        // Map the rest of the file at once when it fits in a single mapping
+        long length = size - start <= Integer.MAX_VALUE ? size - start : WINDOW_SIZE;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+        limit = (int) length;
+        return (int) (start + length - loadedEnd);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closeChannel) channel.close();
+    }
+}
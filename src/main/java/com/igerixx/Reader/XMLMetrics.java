@@ -0,0 +1,78 @@
+package com.igerixx.Reader;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Counters an {@link XMLLexer} updates while metrics are enabled, for the
+ * current document. Each document is reported as one
+ * {@link XMLParseEvent} to JDK Flight Recorder when it ends.
+ */
+final class XMLMetrics {
+    String label;
+    final long[] tokenCounts = new long[XMLTokenConstants.END_OF_FILE + 1];
+    long refills;
+    long refillNanos;
+    int longestText;
+    long entityDecodes;
+    // Characters of the bytes before charsCountedTo in the lexer buffer
+    long chars;
+    int charsCountedTo;
+    private XMLParseEvent event;
+
+    void token(int type, int length) {
+        tokenCounts[type]++;
+        if (type == XMLTokenConstants.CONTENT && length > longestText) longestText = length;
+    }
+
+    /**
+     * Counts the characters of the UTF-8 bytes from charsCountedTo up to
+     * {@code end}; continuation bytes start no character.
+     */
+    void countChars(ByteBuffer buffer, int end) {
+        long count = 0;
+        for (int i = charsCountedTo; i < end; i++) {
+            if ((buffer.get(i) & 0xC0) != 0x80) count++;
+        }
+        chars += count;
+        if (end > charsCountedTo) charsCountedTo = end;
+    }
+
+    void begin() {
+        if (event != null) return;
+        event = new XMLParseEvent();
+        event.begin();
+    }
+
+    /**
+     * Ends the document, committing its event if a recording wants it.
+     */
+    void end(long bytes) {
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.label = label;
+            event.bytes = bytes;
+            event.chars = chars;
+            event.tokens = Arrays.stream(tokenCounts).sum();
+            event.startTags = tokenCounts[XMLTokenConstants.TAG_OPEN];
+            event.textNodes = tokenCounts[XMLTokenConstants.CONTENT];
+            event.refills = refills;
+            event.refillTime = refillNanos;
+            event.longestText = longestText;
+            event.entityDecodes = entityDecodes;
+            event.commit();
+        }
+        event = null;
+    }
+
+    void clear() {
+        Arrays.fill(tokenCounts, 0);
+        refills = 0;
+        refillNanos = 0;
+        longestText = 0;
+        entityDecodes = 0;
+        chars = 0;
+        charsCountedTo = 0;
+    }
+}
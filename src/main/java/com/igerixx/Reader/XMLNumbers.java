@@ -0,0 +1,150 @@
+package com.igerixx.Reader;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses numbers and booleans straight from UTF-8 bytes, so values bound by
+ * {@link XMLBinder} never become Strings first. Surrounding whitespace is
+ * ignored. Invalid input throws {@link NumberFormatException}.
+ */
+final class XMLNumbers {
+    private static final double[] DOUBLE_POWERS = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final float[] FLOAT_POWERS = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    private XMLNumbers() {}
+
+    static long parseLong(byte[] bytes, int offset, int length, long min, long max) {
+        int start = trimStart(bytes, offset, offset + length);
+        int end = trimEnd(bytes, start, offset + length);
+        int i = start;
+
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) negative = bytes[i++] == '-';
+        if (i == end) throw invalid(bytes, offset, length);
+
+        // Accumulate negatively so that the minimum value fits
+        long value = 0;
+        long limit = negative ? min : -max;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) throw invalid(bytes, offset, length);
+            if (value < (limit + digit) / 10) throw invalid(bytes, offset, length);
+            value = value * 10 - digit;
+        }
+        return negative ? value : -value;
+    }
+
+    static boolean parseBoolean(byte[] bytes, int offset, int length) {
+        int start = trimStart(bytes, offset, offset + length);
+        int end = trimEnd(bytes, start, offset + length);
+        int size = end - start;
+
+        if (size == 1 && bytes[start] == '1') return true;
+        if (size == 1 && bytes[start] == '0') return false;
+        if (size == 4 && bytes[start] == 't' && bytes[start + 1] == 'r' && bytes[start + 2] == 'u' && bytes[start + 3] == 'e')
+            return true;
+        if (size == 5 && bytes[start] == 'f' && bytes[start + 1] == 'a' && bytes[start + 2] == 'l' && bytes[start + 3] == 's' && bytes[start + 4] == 'e')
+            return false;
+        throw invalid(bytes, offset, length);
+    }
+
+    static double parseDouble(byte[] bytes, int offset, int length) {
+        return parseDecimal(bytes, offset, length, false);
+    }
+
+    static float parseFloat(byte[] bytes, int offset, int length) {
+        return (float) parseDecimal(bytes, offset, length, true);
+    }
+
+    /**
+     * Parses {@code [sign] digits [. digits] [e [sign] digits]}. Up to 15
+     * significant digits (7 for float) times a power of ten up to 22 (10 for
+     * float) is exact as one multiplication or division; everything else,
+     * including NaN and Infinity, goes to the JDK.
+     */
+    private static double parseDecimal(byte[] bytes, int offset, int length, boolean single) {
+        int maxDigits = single ? 7 : 15;
+        int maxPower = single ? 10 : 22;
+        int start = trimStart(bytes, offset, offset + length);
+        int end = trimEnd(bytes, start, offset + length);
+        int i = start;
+
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) negative = bytes[i++] == '-';
+
+        long value = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+
+        for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+            value = value * 10 + bytes[i] - '0';
+            if (value != 0 && ++digits > maxDigits) return parseSlow(bytes, offset, length, single);
+            any = true;
+        }
+        if (i < end && bytes[i] == '.') {
+            for (i++; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                value = value * 10 + bytes[i] - '0';
+                if (value != 0 && ++digits > maxDigits) return parseSlow(bytes, offset, length, single);
+                exponent--;
+                any = true;
+            }
+        }
+        if (!any) return parseSlow(bytes, offset, length, single);
+
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) negativeExponent = bytes[i++] == '-';
+            if (i == end) return parseSlow(bytes, offset, length, single);
+
+            int power = 0;
+            for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                power = power * 10 + bytes[i] - '0';
+                if (power > 1000) return parseSlow(bytes, offset, length, single);
+            }
+            exponent += negativeExponent ? -power : power;
+        }
+        if (i != end) return parseSlow(bytes, offset, length, single);
+
+        // Zero is exact at any power
+        if (value == 0) exponent = 0;
+        if (exponent < -maxPower || exponent > maxPower) return parseSlow(bytes, offset, length, single);
+
+        if (single) {
+            float result = value;
+            result = exponent < 0 ? result / FLOAT_POWERS[-exponent] : result * FLOAT_POWERS[exponent];
+            return negative ? -result : result;
+        }
+        double result = value;
+        result = exponent < 0 ? result / DOUBLE_POWERS[-exponent] : result * DOUBLE_POWERS[exponent];
+        return negative ? -result : result;
+    }
+
+    private static double parseSlow(byte[] bytes, int offset, int length, boolean single) {
+        String value = string(bytes, offset, length);
+        return single ? Float.parseFloat(value) : Double.parseDouble(value);
+    }
+
+    // 32 - whitespace
+    private static int trimStart(byte[] bytes, int start, int end) {
+        while (start < end && (bytes[start] & 0xFF) <= 32) start++;
+        return start;
+    }
+
+    private static int trimEnd(byte[] bytes, int start, int end) {
+        while (end > start && (bytes[end - 1] & 0xFF) <= 32) end--;
+        return end;
+    }
+
+    private static String string(byte[] bytes, int offset, int length) {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private static NumberFormatException invalid(byte[] bytes, int offset, int length) {
+        return new NumberFormatException("For input \"" + string(bytes, offset, length) + "\"");
+    }
+}
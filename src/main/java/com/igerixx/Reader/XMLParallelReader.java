@@ -0,0 +1,295 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Parses a large file made of many sibling records, such as
+ * {@code <catalog><item/>...</catalog>}, on several cores. The file is
+ * memory-mapped and split into chunks that each start at a record start
+ * tag; every chunk is parsed by its own {@link XMLReader} on a
+ * {@link ForkJoinPool}. Records are mapped on the pool threads and handed
+ * to the consumer on the calling thread, in document order or as soon as
+ * their chunk is done.
+ * <p>
+ * Chunk boundaries are found by a raw search for {@code <name}, so record
+ * elements must not nest and their start tag must not appear inside
+ * comments or CDATA sections. Chunks after the first start inside the
+ * elements that enclose the first record, with their attributes and
+ * namespace declarations and after the DOCTYPE, so depths, prefixes and
+ * entities resolve as in a single pass when all records share those
+ * enclosing elements.
+ */
+public class XMLParallelReader implements AutoCloseable {
+    private static final XMLByteScanner SCANNER = XMLByteScanner.INSTANCE;
+    private static final int SEARCH_WINDOW = 1024 * 1024; // 1 Mb
+
+    private final FileChannel channel;
+    private final String recordName;
+    private final byte[] recordNameBytes;
+    private XMLSymbolTable symbols = new XMLSymbolTable();
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private long chunkSize = 8 * 1024 * 1024; // 8 Mb
+    private boolean ordered = true;
+    private boolean trimText = true;
+    private boolean ignoreComments = false;
+    private boolean namespaceAware = false;
+    // DOCTYPE and start tags of the elements open at the first record, as
+    // UTF-8, and how many events they are; null until read() looked for them
+    private byte[] context;
+    private int contextEvents;
+
+    public XMLParallelReader(Path path, String recordName) throws IOException {
+        if (recordName.isEmpty())
+            throw new IllegalArgumentException("Record name is empty");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.recordName = recordName;
+        this.recordNameBytes = recordName.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sets the pool chunks are parsed on, the common pool by default.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the approximate size of a chunk, 8 Mb by default.
+     */
+    public void setChunkSize(long chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size must be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Delivers records in document order when true, the default, or chunk by
+     * chunk as they finish when false.
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    public void trimText(boolean trim) {
+        this.trimText = trim;
+    }
+
+    public void setIgnoreComments(boolean ignoreComments) {
+        this.ignoreComments = ignoreComments;
+    }
+
+    public void setNamespaceAware(boolean namespaceAware) {
+        this.namespaceAware = namespaceAware;
+    }
+
+    /**
+     * Returns the symbol table shared by the readers of all chunks, so name
+     * ids are the same in every mapper call.
+     */
+    public XMLSymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public void setSymbolTable(XMLSymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Maps every record with {@code mapper} on the pool and passes the
+     * results to {@code consumer} on the calling thread.
+     */
+    public <T> void read(XMLRecordMapper<? extends T> mapper, Consumer<? super T> consumer) throws IOException {
+        // Bound the chunks in flight so results do not pile up in memory
+        int maxInFlight = pool.getParallelism() * 2;
+        long size = channel.size();
+        long start = 0;
+        if (context == null) readContext();
+
+        if (ordered) {
+            ArrayDeque<CompletableFuture<List<T>>> inFlight = new ArrayDeque<>();
+            try {
+                while (true) {
+                    while (inFlight.size() < maxInFlight && start < size) {
+                        long end = findRecordStart(start + chunkSize, size);
+                        inFlight.add(submit(start, end, mapper));
+                        start = end;
+                    }
+                    if (inFlight.isEmpty()) break;
+                    join(inFlight.poll()).forEach(consumer);
+                }
+            } finally {
+                for (CompletableFuture<List<T>> chunk : inFlight) chunk.cancel(false);
+            }
+            return;
+        }
+
+        BlockingQueue<CompletableFuture<List<T>>> done = new LinkedBlockingQueue<>();
+        List<CompletableFuture<List<T>>> running = new ArrayList<>();
+        try {
+            while (true) {
+                while (running.size() < maxInFlight && start < size) {
+                    long end = findRecordStart(start + chunkSize, size);
+                    CompletableFuture<List<T>> chunk = submit(start, end, mapper);
+                    chunk.whenComplete((records, e) -> done.add(chunk));
+                    running.add(chunk);
+                    start = end;
+                }
+                if (running.isEmpty()) break;
+
+                CompletableFuture<List<T>> chunk = done.take();
+                running.remove(chunk);
+                join(chunk).forEach(consumer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a chunk");
+        } finally {
+            for (CompletableFuture<List<T>> chunk : running) chunk.cancel(false);
+        }
+    }
+
+    private <T> CompletableFuture<List<T>> submit(long start, long end, XMLRecordMapper<? extends T> mapper) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return parseChunk(start, end, mapper);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pool);
+    }
+
+    private <T> List<T> parseChunk(long start, long end, XMLRecordMapper<? extends T> mapper) throws IOException {
+        List<T> records = new ArrayList<>();
+
+        try (XMLReader reader = start == 0 ? new XMLReader(new XMLMappedSource(channel, false, start, end)) : new XMLReader(context)) {
+            reader.setSymbolTable(symbols);
+            reader.trimText(trimText);
+            reader.setIgnoreComments(ignoreComments);
+            reader.setNamespaceAware(namespaceAware);
+            if (start != 0) {
+                // --- Declare the entities and open the elements around the records ---
+                for (int i = 0; i < contextEvents; i++) reader.next();
+                reader.getLexer().setSource(new XMLMappedSource(channel, false, start, end), start);
+            }
+
+            // Namespace aware readers skip to local names
+            int colon = namespaceAware ? recordName.indexOf(':') : -1;
+            String prefix = colon == -1 ? "" : recordName.substring(0, colon);
+            String localName = recordName.substring(colon + 1);
+            while (reader.skipToElement(localName)) {
+                if (namespaceAware && !reader.getPrefix().equals(prefix)) continue;
+                int depth = reader.getDepth();
+                T record = mapper.map(reader);
+                if (record != null) records.add(record);
+
+                // Skip what the mapper left of the record
+                while (reader.getDepth() >= depth && reader.hasNext()) {
+                    if (reader.getEventType() == XMLReaderConstants.START_ELEMENT)
+                        reader.skipElement();
+                    else
+                        reader.next();
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reads up to the first record and keeps the start tags of the elements
+     * open there.
+     */
+    private void readContext() throws IOException {
+        List<String> open = new ArrayList<>();
+        byte[] doctype = new byte[0];
+        try (XMLReader reader = new XMLReader(new XMLMappedSource(channel, false, 0, channel.size()))) {
+            reader.setIgnoreComments(true);
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLReaderConstants.START_ELEMENT) {
+                    if (reader.getLocalName().equals(recordName)) break;
+                    open.add(XMLRecordIndex.startTag(reader));
+                } else if (event == XMLReaderConstants.END_ELEMENT) {
+                    open.remove(open.size() - 1);
+                } else if (event == XMLReaderConstants.DTD) {
+                    doctype = XMLRecordIndex.doctype(reader);
+                }
+            }
+        }
+        byte[] tags = String.join("", open).getBytes(StandardCharsets.UTF_8);
+        context = Arrays.copyOf(doctype, doctype.length + tags.length);
+        System.arraycopy(tags, 0, context, doctype.length, tags.length);
+        // START_DOCUMENT, the DTD and a START_ELEMENT per open element
+        contextEvents = 1 + (doctype.length > 0 ? 1 : 0) + open.size();
+    }
+
+    /**
+     * Returns the offset of the first record start tag at or after
+     * {@code from}, or {@code size} if there is none.
+     */
+    private long findRecordStart(long from, long size) throws IOException {
+        int length = recordNameBytes.length;
+
+        while (from < size) {
+            int limit = (int) Math.min(size - from, SEARCH_WINDOW);
+            boolean last = from + limit == size;
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, from, limit);
+
+            int i = SCANNER.indexOf(window, 0, limit, '<');
+            while (i < limit) {
+                // The name and the byte after it must be in this window
+                if (i + length + 2 > limit) break;
+                if (isRecordStart(window, i + 1)) return from + i;
+                i = SCANNER.indexOf(window, i + 1, limit, '<');
+            }
+
+            if (last) return size;
+            // Continue at the '<' that was cut off, or after the window
+            from += i < limit && i > 0 ? i : limit;
+        }
+        return size;
+    }
+
+    private boolean isRecordStart(ByteBuffer window, int nameStart) {
+        int length = recordNameBytes.length;
+        for (int i = 0; i < length; i++) {
+            if (window.get(nameStart + i) != recordNameBytes[i]) return false;
+        }
+        // 32 - whitespace
+        int terminator = window.get(nameStart + length) & 0xFF;
+        return terminator <= 32 || terminator == '>' || terminator == '/';
+    }
+
+    private static <T> List<T> join(CompletableFuture<List<T>> chunk) throws IOException {
+        try {
+            return chunk.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,52 @@
+package com.igerixx.Reader;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * One document parsed by a reader with metrics enabled, from its first
+ * refill to its end or to the close of the reader.
+ */
+@Name("com.igerixx.Reader.Parse")
+@Label("XML Parse")
+@Category("XML")
+@Description("A document parsed by an XMLReader with metrics enabled")
+class XMLParseEvent extends jdk.jfr.Event {
+    @Label("Label")
+    String label;
+
+    @Label("Bytes")
+    @DataAmount(DataAmount.BYTES)
+    long bytes;
+
+    @Label("Characters")
+    long chars;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("Start Tags")
+    long startTags;
+
+    @Label("Text Nodes")
+    long textNodes;
+
+    @Label("Refills")
+    long refills;
+
+    @Label("Refill Time")
+    @Description("Time spent waiting for input in refills")
+    @Timespan(Timespan.NANOSECONDS)
+    long refillTime;
+
+    @Label("Longest Text")
+    @DataAmount(DataAmount.BYTES)
+    long longestText;
+
+    @Label("Entity Decodes")
+    long entityDecodes;
+}
@@ -0,0 +1,88 @@
+package com.igerixx.Reader;
+
+/**
+ * Snapshot of what a reader with metrics enabled has done in the current
+ * document, see {@link XMLReader#getMetrics()}.
+ */
+public final class XMLParseMetrics {
+    private final String label;
+    private final long bytes;
+    private final long chars;
+    private final long[] tokenCounts;
+    private final long refills;
+    private final long refillNanos;
+    private final int longestText;
+    private final long entityDecodes;
+
+    XMLParseMetrics(XMLMetrics metrics, long bytes) {
+        this.label = metrics.label;
+        this.bytes = bytes;
+        this.chars = metrics.chars;
+        this.tokenCounts = metrics.tokenCounts.clone();
+        this.refills = metrics.refills;
+        this.refillNanos = metrics.refillNanos;
+        this.longestText = metrics.longestText;
+        this.entityDecodes = metrics.entityDecodes;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns the number of input bytes read, including skipped ones.
+     */
+    public long getBytesConsumed() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of characters the bytes read encode.
+     */
+    public long getCharsConsumed() {
+        return chars;
+    }
+
+    /**
+     * Returns how many tokens of a {@link XMLTokenConstants} type were read.
+     */
+    public long getTokenCount(int type) {
+        if (type < 0 || type >= tokenCounts.length)
+            throw new IllegalArgumentException("Unknown token type " + type);
+        return tokenCounts[type];
+    }
+
+    public long getRefillCount() {
+        return refills;
+    }
+
+    /**
+     * Returns the time spent waiting for input in refills, in nanoseconds.
+     */
+    public long getRefillNanos() {
+        return refillNanos;
+    }
+
+    /**
+     * Returns the length in UTF-8 bytes of the longest text token.
+     */
+    public int getLongestText() {
+        return longestText;
+    }
+
+    public long getEntityDecodes() {
+        return entityDecodes;
+    }
+
+    @Override
+    public String toString() {
+        long tokens = 0;
+        for (long count : tokenCounts) tokens += count;
+        return "XMLParseMetrics{" + (label == null ? "" : "label=" + label + ", ")
+                + "bytes=" + bytes + ", chars=" + chars + ", tokens=" + tokens
+                + ", startTags=" + tokenCounts[XMLTokenConstants.TAG_OPEN]
+                + ", textNodes=" + tokenCounts[XMLTokenConstants.CONTENT]
+                + ", refills=" + refills + ", refillMillis=" + refillNanos / 1_000_000
+                + ", longestText=" + longestText + ", entityDecodes=" + entityDecodes + "}";
+    }
+}
@@ -0,0 +1,327 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs an {@link XMLReader} on a thread of its own and hands its events to
+ * the calling thread, so lexing and heavy consumer code run on two cores:
+ * <pre>
+ * try (XMLPipelinedReader reader = new XMLPipelinedReader(new XMLReader(is))) {
+ *     while (reader.hasNext()) {
+ *         int event = reader.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * Events are copied into compact records, type, depth, name id and offsets
+ * of text and attribute values, in batches of a preallocated ring. The
+ * lexing thread publishes a batch when it is full and parks when every
+ * batch is waiting to be consumed; the consumer parks when none is ready.
+ * Each side only writes its own counter, so the handoff takes no lock.
+ * <p>
+ * The wrapped reader must be configured before it is passed in and not be
+ * used afterwards. Namespace prefixes and URIs are not carried over, name
+ * ids are those of local names when the reader is namespace aware.
+ */
+public class XMLPipelinedReader implements XMLCursor {
+    private static final int BATCH_COUNT = 8;
+    private static final int BATCH_EVENTS = 1024;
+    // A batch is published early once its text and values reach this size
+    private static final int BATCH_BYTES = 64 * 1024; // 64 Kb
+
+    private static final class Batch {
+        int count;
+        final int[] types = new int[BATCH_EVENTS];
+        final int[] depths = new int[BATCH_EVENTS];
+        final int[] nameIds = new int[BATCH_EVENTS];
+        final int[] textStarts = new int[BATCH_EVENTS];
+        final int[] textLengths = new int[BATCH_EVENTS];
+        final int[] attributeStarts = new int[BATCH_EVENTS];
+        final int[] attributeCounts = new int[BATCH_EVENTS];
+        int attributeEnd;
+        int[] attributeNameIds = new int[256];
+        int[] attributeValueStarts = new int[256];
+        int[] attributeValueLengths = new int[256];
+        // UTF-8 text and attribute values of all events
+        byte[] bytes = new byte[BATCH_BYTES * 2];
+        int byteEnd;
+        // Error of the lexing thread after the last event of the batch
+        Throwable failure;
+
+        void clear() {
+            count = 0;
+            attributeEnd = 0;
+            byteEnd = 0;
+            failure = null;
+        }
+
+        void add(XMLReader reader, int event) {
+            int i = count++;
+            types[i] = event;
+            depths[i] = reader.getDepth();
+            nameIds[i] = reader.getNameId();
+
+            int textLength = reader.getTextByteLength();
+            textStarts[i] = byteEnd;
+            textLengths[i] = textLength;
+            if (textLength > 0) append(reader.getTextBytes(), 0, textLength);
+
+            int attributeCount = reader.getAttributeCount();
+            attributeStarts[i] = attributeEnd;
+            attributeCounts[i] = attributeCount;
+            if (attributeEnd + attributeCount > attributeNameIds.length) {
+                int length = Math.max(attributeEnd + attributeCount, attributeNameIds.length * 2);
+                attributeNameIds = Arrays.copyOf(attributeNameIds, length);
+                attributeValueStarts = Arrays.copyOf(attributeValueStarts, length);
+                attributeValueLengths = Arrays.copyOf(attributeValueLengths, length);
+            }
+            byte[] values = reader.getAttributeValueBytes();
+            for (int a = 0; a < attributeCount; a++) {
+                int length = reader.getAttributeValueLength(a);
+                attributeNameIds[attributeEnd] = reader.getAttributeNameId(a);
+                attributeValueStarts[attributeEnd] = byteEnd;
+                attributeValueLengths[attributeEnd] = length;
+                append(values, reader.getAttributeValueStart(a), length);
+                attributeEnd++;
+            }
+        }
+
+        boolean isFull() {
+            return count == BATCH_EVENTS || byteEnd >= BATCH_BYTES;
+        }
+
+        private void append(byte[] source, int offset, int length) {
+            if (byteEnd + length > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(byteEnd + length, bytes.length * 2));
+            System.arraycopy(source, offset, bytes, byteEnd, length);
+            byteEnd += length;
+        }
+    }
+
+    private final XMLReader reader;
+    private final XMLSymbolTable symbols;
+    private final Batch[] ring = new Batch[BATCH_COUNT];
+    // Batches published by the lexing thread and released by the consumer so far
+    private volatile long produced = 0;
+    private volatile long consumed = 0;
+    private volatile Thread producer;
+    private volatile Thread consumer;
+    private volatile boolean closed = false;
+
+    // --- Current event ---
+    private Batch batch;
+    private int index = -1;
+    private int event;
+    private String text;
+    private char[] textChars = new char[0];
+    private int textCharsLength = -1;
+
+    public XMLPipelinedReader(XMLReader reader) {
+        this.reader = reader;
+        this.symbols = reader.getSymbolTable();
+        for (int i = 0; i < BATCH_COUNT; i++) ring[i] = new Batch();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return event != XMLReaderConstants.END_DOCUMENT;
+    }
+
+    @Override
+    public int next() throws IOException {
+        if (event == XMLReaderConstants.END_DOCUMENT) return event;
+        if (producer == null) start();
+
+        index++;
+        while (batch == null || index == batch.count) {
+            if (batch != null) {
+                if (batch.failure != null) throw failure(batch.failure);
+                // --- Hand the batch back ---
+                consumed = consumed + 1;
+                LockSupport.unpark(producer);
+            }
+            batch = take();
+            index = 0;
+        }
+
+        event = batch.types[index];
+        text = null;
+        textCharsLength = -1;
+        return event;
+    }
+
+    private Batch take() throws IOException {
+        long next = consumed;
+        if (produced == next) {
+            consumer = Thread.currentThread();
+            while (produced == next) {
+                if (closed) throw new IOException("Reader is closed");
+                LockSupport.park(this);
+            }
+        }
+        return ring[(int) (next % BATCH_COUNT)];
+    }
+
+    private void start() {
+        Thread thread = new Thread(this::produce, "xml-pipeline");
+        thread.setDaemon(true);
+        producer = thread;
+        thread.start();
+    }
+
+    private void produce() {
+        try {
+            long next = 0;
+            while (true) {
+                // --- Wait for a free batch ---
+                while (next - consumed == BATCH_COUNT) {
+                    if (closed) return;
+                    LockSupport.park(this);
+                }
+                if (closed) return;
+
+                Batch target = ring[(int) (next % BATCH_COUNT)];
+                target.clear();
+                boolean end = false;
+                try {
+                    while (!end && !target.isFull()) {
+                        int event = reader.next();
+                        target.add(reader, event);
+                        end = event == XMLReaderConstants.END_DOCUMENT;
+                    }
+                } catch (Throwable e) {
+                    target.failure = e;
+                    end = true;
+                }
+
+                produced = ++next;
+                LockSupport.unpark(consumer);
+                if (end) return;
+            }
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+                // The consumer has all events up to here
+            }
+        }
+    }
+
+    private static IOException failure(Throwable e) {
+        if (e instanceof IOException) return (IOException) e;
+        if (e instanceof RuntimeException) throw (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+        return new IOException(e);
+    }
+
+    @Override
+    public int getEventType() {
+        return event;
+    }
+
+    @Override
+    public int getDepth() {
+        return batch == null ? 0 : batch.depths[index];
+    }
+
+    @Override
+    public String getLocalName() {
+        int nameId = getNameId();
+        return nameId == -1 ? "" : symbols.getName(nameId);
+    }
+
+    @Override
+    public int getNameId() {
+        return batch == null ? -1 : batch.nameIds[index];
+    }
+
+    @Override
+    public XMLSymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return batch == null ? 0 : batch.attributeCounts[index];
+    }
+
+    @Override
+    public String getAttributeLocalName(int index) {
+        return symbols.getName(batch.attributeNameIds[attribute(index)]);
+    }
+
+    @Override
+    public int getAttributeNameId(int index) {
+        return batch.attributeNameIds[attribute(index)];
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        int attribute = attribute(index);
+        return new String(batch.bytes, batch.attributeValueStarts[attribute], batch.attributeValueLengths[attribute], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getAttributeIndex(int nameId) {
+        int count = getAttributeCount();
+        for (int i = 0; i < count; i++) {
+            if (batch.attributeNameIds[batch.attributeStarts[index] + i] == nameId) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String getText() {
+        if (text == null)
+            text = batch == null ? "" : new String(batch.bytes, batch.textStarts[index], batch.textLengths[index], StandardCharsets.UTF_8);
+        return text;
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        decodeText();
+        return textChars;
+    }
+
+    @Override
+    public int getTextStart() {
+        return 0;
+    }
+
+    @Override
+    public int getTextLength() {
+        decodeText();
+        return textCharsLength;
+    }
+
+    /**
+     * Stops the lexing thread, which then closes the wrapped reader.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (producer == null) {
+            reader.close();
+            return;
+        }
+        LockSupport.unpark(producer);
+        LockSupport.unpark(consumer);
+    }
+
+    private int attribute(int index) {
+        if (index < 0 || index >= getAttributeCount())
+            throw new IndexOutOfBoundsException(index);
+        return batch.attributeStarts[this.index] + index;
+    }
+
+    private void decodeText() {
+        if (textCharsLength != -1) return;
+        int length = batch == null ? 0 : batch.textLengths[index];
+        if (textChars.length < length)
+            textChars = new char[Math.max(length, textChars.length * 2)];
+        textCharsLength = length == 0 ? 0 : XMLUtf8.decode(batch.bytes, batch.textStarts[index], length, textChars);
+    }
+}
@@ -0,0 +1,341 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Runs many path queries over one pass of an {@link XMLReader} and calls a
+ * handler for every match. Supported paths are a subset of XPath:
+ * <pre>
+ * /catalog/book/title          child steps from the root
+ * //price                      a step at any depth
+ * /catalog/*&#47;title              any element name
+ * /catalog/book[@lang='en']    attribute value predicate, [@lang] tests presence
+ * /catalog/book/@id            attribute of the matched element
+ * price, @id                   same as //price and //*&#47;@id
+ * </pre>
+ * An element match is reported at its END_ELEMENT with the text of the
+ * element and its descendants; when the reader trims text the text nodes are
+ * joined with a space. An attribute match is reported at the START_ELEMENT.
+ * <p>
+ * Queries are compiled into steps of one automaton whose active states are
+ * kept per element depth as bit sets, so each event is evaluated once for
+ * all queries. Names are compared by symbol table id, predicates on raw
+ * bytes, and only matching text and attribute values are turned into
+ * Strings. {@link #run(XMLReader)} also skips subtrees no query can match
+ * with {@link XMLReader#skipElement()}.
+ * <p>
+ * An engine is not thread-safe and evaluates one document at a time.
+ */
+public class XMLQueryEngine {
+    private static final class Step {
+        final boolean descendant;
+        // null for *
+        final String name;
+        int nameId;
+        final String[] predicateNames;
+        // UTF-8 values, null where only presence is tested
+        final byte[][] predicateValues;
+        final int[] predicateIds;
+
+        Step(boolean descendant, String name, List<String> predicateNames, List<byte[]> predicateValues) {
+            this.descendant = descendant;
+            this.name = name;
+            this.predicateNames = predicateNames.toArray(new String[0]);
+            this.predicateValues = predicateValues.toArray(new byte[0][]);
+            this.predicateIds = new int[this.predicateNames.length];
+        }
+    }
+
+    private static final class Query {
+        final Step[] steps;
+        // null when the query selects elements
+        final String attribute;
+        int attributeId;
+        final Consumer<String> handler;
+        // State of the query before its first step, one more per matched step
+        final int firstState;
+
+        Query(Step[] steps, String attribute, Consumer<String> handler, int firstState) {
+            this.steps = steps;
+            this.attribute = attribute;
+            this.handler = handler;
+            this.firstState = firstState;
+        }
+    }
+
+    private final List<Query> queries = new ArrayList<>();
+    private int stateCount = 0;
+    private int[] stateQuery = new int[0];
+    private XMLSymbolTable boundSymbols;
+
+    // Active states per depth, sets[0] holds the start state of every query
+    private long[][] sets = new long[0][];
+    private int depth = 0;
+
+    // Elements whose text is being collected, innermost last
+    private int captureCount = 0;
+    private int[] captureQuery = new int[8];
+    private int[] captureDepth = new int[8];
+    private StringBuilder[] captureText = new StringBuilder[8];
+
+    /**
+     * Compiles {@code path} and calls {@code handler} with the text or
+     * attribute value of every match.
+     *
+     * @throws IllegalArgumentException if the path is not in the supported subset
+     */
+    public XMLQueryEngine addQuery(String path, Consumer<String> handler) {
+        List<Step> steps = new ArrayList<>();
+        String attribute = null;
+        int i;
+        boolean descendant;
+
+        if (path.startsWith("//")) {
+            descendant = true;
+            i = 2;
+        } else if (path.startsWith("/")) {
+            descendant = false;
+            i = 1;
+        } else {
+            descendant = true;
+            i = 0;
+        }
+
+        while (true) {
+            // --- Attribute ---
+            if (i < path.length() && path.charAt(i) == '@') {
+                // Attributes after // or of a relative path belong to any element
+                if (descendant) steps.add(new Step(true, null, List.of(), List.of()));
+                else if (steps.isEmpty()) throw invalidPath(path, i, "the document has no attributes");
+
+                int end = nameEnd(path, i + 1);
+                if (end == i + 1) throw invalidPath(path, i, "attribute name expected");
+                if (end != path.length()) throw invalidPath(path, end, "attribute must be the last step");
+                attribute = path.substring(i + 1, end);
+                break;
+            }
+
+            // --- Element name ---
+            int end = nameEnd(path, i);
+            if (end == i) throw invalidPath(path, i, "element name expected");
+            String name = path.substring(i, end);
+            i = end;
+
+            // --- Predicates ---
+            List<String> predicateNames = new ArrayList<>();
+            List<byte[]> predicateValues = new ArrayList<>();
+            while (i < path.length() && path.charAt(i) == '[') {
+                if (i + 1 >= path.length() || path.charAt(i + 1) != '@')
+                    throw invalidPath(path, i, "only [@name] and [@name='value'] predicates are supported");
+                int nameStart = i + 2;
+                int nameEnd = nameEnd(path, nameStart);
+                if (nameEnd == nameStart) throw invalidPath(path, nameStart, "attribute name expected");
+                predicateNames.add(path.substring(nameStart, nameEnd));
+                i = nameEnd;
+
+                byte[] value = null;
+                if (i < path.length() && path.charAt(i) == '=') {
+                    char quote = i + 1 < path.length() ? path.charAt(i + 1) : 0;
+                    if (quote != '\'' && quote != '"') throw invalidPath(path, i + 1, "quoted value expected");
+                    int valueEnd = path.indexOf(quote, i + 2);
+                    if (valueEnd == -1) throw invalidPath(path, i + 1, "unterminated value");
+                    value = path.substring(i + 2, valueEnd).getBytes(StandardCharsets.UTF_8);
+                    i = valueEnd + 1;
+                }
+                predicateValues.add(value);
+
+                if (i >= path.length() || path.charAt(i) != ']') throw invalidPath(path, i, "']' expected");
+                i++;
+            }
+
+            steps.add(new Step(descendant, name.equals("*") ? null : name, predicateNames, predicateValues));
+            if (i == path.length()) break;
+
+            // --- Separator ---
+            if (path.charAt(i) != '/') throw invalidPath(path, i, "'/' expected");
+            descendant = path.startsWith("//", i);
+            i += descendant ? 2 : 1;
+        }
+
+        Query query = new Query(steps.toArray(new Step[0]), attribute, handler, stateCount);
+        queries.add(query);
+        stateCount += query.steps.length + 1;
+        stateQuery = Arrays.copyOf(stateQuery, stateCount);
+        Arrays.fill(stateQuery, query.firstState, stateCount, queries.size() - 1);
+        boundSymbols = null;
+        sets = new long[0][];
+        return this;
+    }
+
+    /**
+     * Reads the rest of the document and evaluates every event.
+     */
+    public void run(XMLReader reader) throws IOException {
+        start(reader);
+        while (reader.hasNext()) {
+            int event = reader.next();
+            // Nothing below this element can match, skip it without tokenizing
+            if (evaluate(reader) && event == XMLReaderConstants.START_ELEMENT) {
+                reader.skipElement();
+                evaluate(reader);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the current event of {@code reader}, for callers that drive
+     * the reader themselves. Call it after every {@link XMLReader#next()},
+     * starting with the START_DOCUMENT.
+     *
+     * @return true on a START_ELEMENT whose content no query can match, the
+     * caller may skip it
+     */
+    public boolean evaluate(XMLReader reader) throws IOException {
+        switch (reader.getEventType()) {
+            case XMLReaderConstants.START_DOCUMENT -> start(reader);
+            case XMLReaderConstants.START_ELEMENT -> {
+                return startElement(reader);
+            }
+            case XMLReaderConstants.END_ELEMENT -> endElement();
+            case XMLReaderConstants.CHARACTERS, XMLReaderConstants.CDATA -> {
+                if (captureCount > 0) appendText(reader);
+            }
+        }
+        return false;
+    }
+
+    private void start(XMLReader reader) {
+        bind(reader.getSymbolTable());
+        int words = (stateCount + 63) >>> 6;
+        if (sets.length == 0) sets = new long[16][words];
+
+        depth = 0;
+        captureCount = 0;
+        Arrays.fill(sets[0], 0);
+        for (Query query : queries) set(sets[0], query.firstState);
+    }
+
+    private boolean startElement(XMLReader reader) throws IOException {
+        if (boundSymbols != reader.getSymbolTable()) bind(reader.getSymbolTable());
+        if (depth + 1 == sets.length) {
+            int length = sets.length;
+            sets = Arrays.copyOf(sets, length * 2);
+            for (int i = length; i < sets.length; i++) sets[i] = new long[sets[0].length];
+        }
+
+        long[] parent = sets[depth];
+        long[] child = sets[depth + 1];
+        Arrays.fill(child, 0);
+        depth++;
+
+        for (int word = 0; word < parent.length; word++) {
+            long bits = parent[word];
+            while (bits != 0) {
+                int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                int queryIndex = stateQuery[state];
+                Query query = queries.get(queryIndex);
+                int stepIndex = state - query.firstState;
+                if (stepIndex == query.steps.length) continue;
+                Step step = query.steps[stepIndex];
+
+                // A // step keeps looking further down
+                if (step.descendant) set(child, state);
+                if (!matches(step, reader)) continue;
+
+                if (stepIndex + 1 < query.steps.length) set(child, state + 1);
+                else if (query.attribute == null) openCapture(queryIndex);
+                else {
+                    int index = reader.getAttributeIndex(query.attributeId);
+                    if (index != -1) query.handler.accept(reader.getAttributeValue(index));
+                }
+            }
+        }
+
+        if (captureCount > 0) return false;
+        for (long bits : child) if (bits != 0) return false;
+        return true;
+    }
+
+    private void endElement() {
+        while (captureCount > 0 && captureDepth[captureCount - 1] == depth) {
+            captureCount--;
+            queries.get(captureQuery[captureCount]).handler.accept(captureText[captureCount].toString());
+        }
+        if (depth > 0) depth--;
+    }
+
+    private void appendText(XMLReader reader) {
+        char[] chars = reader.getTextCharacters();
+        int length = reader.getTextLength();
+        boolean separate = reader.isTrimText();
+
+        for (int i = 0; i < captureCount; i++) {
+            StringBuilder text = captureText[i];
+            if (separate && text.length() > 0 && length > 0) text.append(' ');
+            text.append(chars, reader.getTextStart(), length);
+        }
+    }
+
+    private void openCapture(int queryIndex) {
+        if (captureCount == captureQuery.length) {
+            int length = captureCount * 2;
+            captureQuery = Arrays.copyOf(captureQuery, length);
+            captureDepth = Arrays.copyOf(captureDepth, length);
+            captureText = Arrays.copyOf(captureText, length);
+        }
+        if (captureText[captureCount] == null) captureText[captureCount] = new StringBuilder();
+
+        captureQuery[captureCount] = queryIndex;
+        captureDepth[captureCount] = depth;
+        captureText[captureCount].setLength(0);
+        captureCount++;
+    }
+
+    private static boolean matches(Step step, XMLReader reader) {
+        if (step.name != null && step.nameId != reader.getNameId()) return false;
+
+        for (int i = 0; i < step.predicateIds.length; i++) {
+            int index = reader.getAttributeIndex(step.predicateIds[i]);
+            if (index == -1) return false;
+            byte[] value = step.predicateValues[i];
+            if (value != null && !reader.attributeValueEquals(index, value)) return false;
+        }
+        return true;
+    }
+
+    private void bind(XMLSymbolTable symbols) {
+        if (boundSymbols == symbols) return;
+
+        for (Query query : queries) {
+            for (Step step : query.steps) {
+                step.nameId = step.name == null ? -1 : symbols.intern(step.name);
+                for (int i = 0; i < step.predicateNames.length; i++)
+                    step.predicateIds[i] = symbols.intern(step.predicateNames[i]);
+            }
+            if (query.attribute != null) query.attributeId = symbols.intern(query.attribute);
+        }
+        boundSymbols = symbols;
+    }
+
+    private static void set(long[] set, int state) {
+        set[state >>> 6] |= 1L << state;
+    }
+
+    private static int nameEnd(String path, int start) {
+        int i = start;
+        while (i < path.length() && "/[]@='\"".indexOf(path.charAt(i)) == -1
+                && !Character.isWhitespace(path.charAt(i))) i++;
+        return i;
+    }
+
+    private static IllegalArgumentException invalidPath(String path, int index, String message) {
+        return new IllegalArgumentException("Invalid path \"" + path + "\" at " + index + ": " + message);
+    }
+}
@@ -0,0 +1,149 @@
+package com.igerixx.Reader;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads an {@link InputStream} on a background thread into a ring of chunks
+ * while the lexer scans the previous ones, so reading and lexing overlap.
+ * Gzip input is recognized by its magic number and inflated on the same
+ * background thread.
+ * <p>
+ * The ring has a single producer and a single consumer: each side only
+ * writes its own counter, and a side that finds the ring full or empty
+ * parks until the other one unparks it.
+ */
+class XMLReadAheadSource extends XMLSource {
+    private static final int CHUNK_COUNT = 4;
+    // Length of a chunk that marks the end of the input
+    private static final int END = -1;
+
+    private final InputStream is;
+    private byte[][] chunks;
+    private int[] lengths;
+    // Chunks filled by the producer and taken by the consumer so far
+    private volatile long produced = 0;
+    private volatile long consumed = 0;
+    private volatile Thread producer;
+    private volatile Thread consumer;
+    private volatile Throwable failure;
+    private volatile boolean closed = false;
+
+    XMLReadAheadSource(InputStream is) {
+        this.is = is;
+    }
+
+    InputStream getInputStream() {
+        return is;
+    }
+
+    @Override
+    int fill(int keep) throws IOException {
+        if (producer == null) start();
+
+        // --- Wait for a chunk ---
+        long index = consumed;
+        if (produced == index) {
+            consumer = Thread.currentThread();
+            while (produced == index) {
+                if (closed) throw new IOException("Reader is closed");
+                LockSupport.park(this);
+            }
+        }
+        int slot = (int) (index % CHUNK_COUNT);
+        int length = lengths[slot];
+        if (failure != null && length == END) {
+            Throwable e = failure;
+            if (e instanceof IOException) throw (IOException) e;
+            throw new IOException("Read-ahead failed", e);
+        }
+
+        // --- Append it after the kept bytes ---
+        int kept = limit - keep;
+        int required = kept + Math.max(length, 0);
+        if (buffer == null)
+            buffer = ByteBuffer.allocate(bufferSize * 2);
+        byte[] array = buffer.array();
+        if (required > array.length) {
+            byte[] grown = new byte[Math.max(required, array.length * 2)];
+            System.arraycopy(array, keep, grown, 0, kept);
+            buffer = ByteBuffer.wrap(grown);
+        } else {
+            System.arraycopy(array, keep, array, 0, kept);
+        }
+        limit = kept;
+        // The end marker stays, later calls see it again
+        if (length == END) return -1;
+
+        System.arraycopy(chunks[slot], 0, buffer.array(), kept, length);
+        limit = required;
+        consumed = index + 1;
+        LockSupport.unpark(producer);
+        return length;
+    }
+
+    private void start() {
+        chunks = new byte[CHUNK_COUNT][bufferSize];
+        lengths = new int[CHUNK_COUNT];
+        Thread thread = new Thread(this::produce, "xml-read-ahead");
+        thread.setDaemon(true);
+        producer = thread;
+        thread.start();
+    }
+
+    private void produce() {
+        try {
+            InputStream input = decompressed(is);
+            while (true) {
+                long index = produced;
+                while (index - consumed == CHUNK_COUNT) {
+                    if (closed) return;
+                    LockSupport.park(this);
+                }
+                if (closed) return;
+
+                int slot = (int) (index % CHUNK_COUNT);
+                // Whole chunks keep the handoffs few
+                int length = input.readNBytes(chunks[slot], 0, chunks[slot].length);
+                lengths[slot] = length == 0 ? END : length;
+                publish(index);
+                if (length == 0) return;
+            }
+        } catch (Throwable e) {
+            failure = e;
+            lengths[(int) (produced % CHUNK_COUNT)] = END;
+            publish(produced);
+        }
+    }
+
+    private void publish(long index) {
+        produced = index + 1;
+        LockSupport.unpark(consumer);
+    }
+
+    // 0x1f 0x8b - gzip magic number
+    private static InputStream decompressed(InputStream is) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(is);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == 0x1f && second == 0x8b) return new GZIPInputStream(buffered, 64 * 1024);
+        return buffered;
+    }
+
+    /**
+     * Stops the background thread after its current read. The stream is
+     * not closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(producer);
+        LockSupport.unpark(consumer);
+    }
+}
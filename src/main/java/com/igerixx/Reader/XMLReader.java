@@ -4,22 +4,80 @@ import javax.swing.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-public class XMLReader {
+public class XMLReader implements XMLCursor {
     private XMLLexer lexer;
     private XMLToken token, lastToken;
-    private String tagName = "";
-    private final Map<String, String> attributes = new HashMap<>();
-    private XMLAttribute attribute = new XMLAttribute();
+    // Names are interned by the symbol table, text is kept as UTF-8 bytes
+    // and only turned into a String or chars when the caller asks for it
+    private XMLSymbolTable symbols = new XMLSymbolTable();
+    private int nameId = -1;
+    // Attributes of the current element in document order, as parallel
+    // arrays of name ids and value slices of attributeValueBytes
+    private int attributeCount = 0;
+    private int[] attributeNameIds = new int[16];
+    private int[] attributeValueStarts = new int[16];
+    private int[] attributeValueLengths = new int[16];
+    private byte[] attributeValueBytes = new byte[1024];
+    private int attributeValueEnd = 0;
+    // Attributes of the current start tag are only tokenized when first read
+    private boolean lazyAttributes = true;
+    private boolean attributesPending = false;
+    // Whether the tag being read is a start tag rather than a processing instruction
+    private boolean inStartTag = false;
+    private byte[] textBytes;
+    private int textLength = 0;
     private String text = "";
+    private char[] textChars = new char[0];
+    private int textCharsLength = 0;
+    private final XMLCharSequence textView = new XMLCharSequence();
+    // Text collected by readElementText
+    private byte[] elementTextBytes = new byte[256];
     private String lastTag = "";
     private int event;
+    // Number of open elements, counting the current START_ELEMENT
+    private int depth = 0;
     private boolean ignoreComments = false;
+    private XMLMetrics metrics;
+    private String metricsLabel;
+    // UTF-8 form of the last name passed to skipToElement
+    private String skipName;
+    private byte[] skipNameBytes;
+
+    // --- Namespaces, resolved only when namespace aware ---
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+    private boolean namespaceAware = false;
+    // Prefix of the name last interned by internName, -1 for none
+    private int internedPrefixId = -1;
+    private int prefixId = -1;
+    private int namespaceId = -1;
+    private int[] attributePrefixIds = new int[16];
+    private int[] attributeNamespaceIds = new int[16];
+    // URIs are interned like names, in a table of their own
+    private final XMLSymbolTable namespaces = new XMLSymbolTable();
+    private final int xmlNamespaceId = namespaces.intern(XML_NAMESPACE);
+    // Prefix bindings in scope, innermost last. The default namespace has
+    // prefix -1, a namespace of -1 undeclares it
+    private int bindingCount = 0;
+    private int[] bindingPrefixIds = new int[16];
+    private int[] bindingNamespaceIds = new int[16];
+    // bindingCount before the declarations of the element at each depth
+    private int[] bindingStarts = new int[16];
+    // Ids of the reserved prefixes in prefixSymbols
+    private XMLSymbolTable prefixSymbols;
+    private int xmlPrefixId;
+    private int xmlnsPrefixId;
 
     public XMLReader(InputStream is) throws IOException {
         lexer = new XMLLexer(is);
@@ -33,47 +91,579 @@ public class XMLReader {
         lexer = new XMLLexer(isr);
     }
 
+    /**
+     * Memory-maps the file and parses it in place. The file is closed by {@link #close()}.
+     */
+    public XMLReader(Path path) throws IOException {
+        lexer = new XMLLexer(path);
+    }
+
+    /**
+     * Memory-maps the channel from position 0. The channel is left open by {@link #close()}.
+     */
+    public XMLReader(FileChannel channel) throws IOException {
+        lexer = new XMLLexer(channel);
+    }
+
+    /**
+     * Parses UTF-8 bytes in place, without copying them. The array must not
+     * change while the reader is used.
+     */
+    public XMLReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public XMLReader(byte[] bytes, int offset, int length) {
+        lexer = new XMLLexer(new XMLBufferSource(wrap(bytes, offset, length)));
+    }
+
+    /**
+     * Parses the UTF-8 bytes from the position to the limit of a heap or
+     * direct buffer in place. The position of {@code buffer} is not changed.
+     */
+    public XMLReader(ByteBuffer buffer) {
+        lexer = new XMLLexer(new XMLBufferSource(buffer.slice()));
+    }
+
+    /**
+     * Parses the document held in {@code text}, which is encoded to UTF-8
+     * once up front.
+     */
+    public XMLReader(CharSequence text) {
+        this(utf8(text));
+    }
+
+    XMLReader(XMLSource source) {
+        lexer = new XMLLexer(source);
+    }
+
+    /**
+     * Starts over on a new document from {@code is}, reusing the buffers,
+     * the symbol table and the settings of this reader, so one reader can
+     * parse many small documents without allocating. The previous input is
+     * not closed, unless it is a file the reader opened itself.
+     */
+    public void reset(InputStream is) throws IOException {
+        XMLSource source = lexer.getSource();
+        if (source instanceof XMLStreamSource)
+            ((XMLStreamSource) source).reset(is);
+        else if (source instanceof XMLReadAheadSource)
+            source = new XMLReadAheadSource(is);
+        else
+            source = new XMLStreamSource(is);
+        lexer.setSource(source);
+        restart();
+    }
+
+    public void reset(InputStream is, Charset charset) throws IOException {
+        reset(XMLLexer.utf8(is, charset));
+    }
+
+    public void reset(byte[] bytes) throws IOException {
+        reset(bytes, 0, bytes.length);
+    }
+
+    public void reset(byte[] bytes, int offset, int length) throws IOException {
+        resetInput(wrap(bytes, offset, length));
+    }
+
+    public void reset(ByteBuffer buffer) throws IOException {
+        resetInput(buffer.slice());
+    }
+
+    public void reset(CharSequence text) throws IOException {
+        reset(utf8(text));
+    }
+
+    private void resetInput(ByteBuffer input) throws IOException {
+        XMLSource source = lexer.getSource();
+        if (source instanceof XMLBufferSource)
+            ((XMLBufferSource) source).reset(input);
+        else
+            source = new XMLBufferSource(input);
+        lexer.setSource(source);
+        restart();
+    }
+
+    private static ByteBuffer wrap(byte[] bytes, int offset, int length) {
+        return ByteBuffer.wrap(bytes, offset, length).slice();
+    }
+
+    private static byte[] utf8(CharSequence text) {
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Puts every setting back to its default and drops the entities declared
+     * on the reader, so a reader handed from one user to the next parses as
+     * a new one would. Must be called before parsing starts.
+     */
+    void restoreDefaults() throws IOException {
+        setReadAhead(false);
+        setMetricsEnabled(false);
+        setMetricsLabel(null);
+        setLazyAttributes(true);
+        setNamespaceAware(false);
+        setIgnoreComments(false);
+        trimText(true);
+        lexer.restoreDefaults();
+    }
+
+    /**
+     * Clears the document state, as before the first {@link #next()}.
+     */
+    void restart() {
+        token = null;
+        lastToken = null;
+        clearData();
+        lastTag = "";
+        event = 0;
+        depth = 0;
+        bindingCount = 0;
+    }
+
+    XMLLexer getLexer() {
+        return lexer;
+    }
+
+    public int getEventType() {
+        return event;
+    }
+
+    void setEventType(int event) {
+        this.event = event;
+    }
+
+    /**
+     * Returns the number of open elements: 1 on the root START_ELEMENT, 0 on
+     * its END_ELEMENT.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the name of the current element, without its prefix when the
+     * reader is namespace aware.
+     */
     public String getLocalName() {
-        return tagName;
+        return nameId == -1 ? "" : symbols.getName(nameId);
+    }
+
+    /**
+     * Splits names into prefix and local name and resolves prefixes to
+     * namespace URIs, off by default. Namespace declarations are then no
+     * longer reported as attributes. Must be called before the first
+     * {@link #next()}.
+     */
+    public void setNamespaceAware(boolean namespaceAware) {
+        if (token != null)
+            throw new IllegalStateException("Namespace awareness must be set before parsing starts");
+        this.namespaceAware = namespaceAware;
+    }
+
+    public boolean isNamespaceAware() {
+        return namespaceAware;
+    }
+
+    /**
+     * Returns the prefix of the current element, or "" if it has none or
+     * the reader is not namespace aware.
+     */
+    public String getPrefix() {
+        return prefixId == -1 ? "" : symbols.getName(prefixId);
+    }
+
+    /**
+     * Returns the namespace URI of the current element, or "" if it is in no
+     * namespace. The same String instance is returned for equal URIs.
+     */
+    public String getNamespaceURI() {
+        return namespaceId == -1 ? "" : namespaces.getName(namespaceId);
+    }
+
+    /**
+     * Returns the URI bound to {@code prefix} in the current scope, "" for
+     * the default namespace, or null if the prefix is not bound.
+     */
+    public String getNamespaceURI(String prefix) {
+        if (prefix.equals("xml")) return XML_NAMESPACE;
+        int id = prefix.isEmpty() ? -1 : symbols.getId(prefix);
+        if (id == -1 && !prefix.isEmpty()) return null;
+        for (int i = bindingCount - 1; i >= 0; i--) {
+            if (bindingPrefixIds[i] == id)
+                return bindingNamespaceIds[i] == -1 ? "" : namespaces.getName(bindingNamespaceIds[i]);
+        }
+        return id == -1 ? "" : null;
+    }
+
+    /**
+     * Returns the number of namespaces declared on the current element, on
+     * its START_ELEMENT and END_ELEMENT.
+     */
+    public int getNamespaceCount() {
+        return bindingCount - namespaceStart();
+    }
+
+    /**
+     * Returns the prefix of a namespace declared on the current element, ""
+     * for the default namespace.
+     */
+    public String getNamespacePrefix(int index) {
+        int id = bindingPrefixIds[checkNamespaceIndex(index)];
+        return id == -1 ? "" : symbols.getName(id);
+    }
+
+    public String getNamespaceURI(int index) {
+        int id = bindingNamespaceIds[checkNamespaceIndex(index)];
+        return id == -1 ? "" : namespaces.getName(id);
+    }
+
+    /**
+     * Returns the symbol table id of the current element name, or -1 if the
+     * event has no name. Ids of known names can be looked up up front with
+     * {@code getSymbolTable().intern(name)}.
+     */
+    public int getNameId() {
+        return nameId;
+    }
+
+    public XMLSymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Replaces the reader's own symbol table, e.g. with one shared by several
+     * readers so they all use the same name ids.
+     */
+    public void setSymbolTable(XMLSymbolTable symbols) {
+        this.symbols = symbols;
     }
 
     public boolean hasAttributes() {
-        return !attributes.isEmpty();
+        if (attributesPending) readAttributes();
+        return attributeCount != 0;
     }
 
-    public Map<String, String> getAttributes() {
-        return attributes;
+    public int getAttributeCount() {
+        if (attributesPending) readAttributes();
+        return attributeCount;
     }
 
-    public List<XMLAttribute> getAttributesList() {
-        List<XMLAttribute> list = new ArrayList<>();
-        attributes.forEach((k, v) -> {
-            list.add(new XMLAttribute(k, v));
-        });
-        return list;
+    public String getAttributeLocalName(int index) {
+        checkAttributeIndex(index);
+        return symbols.getName(attributeNameIds[index]);
+    }
+
+    public int getAttributeNameId(int index) {
+        checkAttributeIndex(index);
+        return attributeNameIds[index];
+    }
+
+    /**
+     * Returns the prefix of an attribute, or "" if it has none or the reader
+     * is not namespace aware.
+     */
+    public String getAttributePrefix(int index) {
+        checkAttributeIndex(index);
+        return attributePrefixIds[index] == -1 ? "" : symbols.getName(attributePrefixIds[index]);
+    }
+
+    /**
+     * Returns the namespace URI of an attribute, "" for unprefixed ones.
+     */
+    public String getAttributeNamespace(int index) {
+        checkAttributeIndex(index);
+        return attributeNamespaceIds[index] == -1 ? "" : namespaces.getName(attributeNamespaceIds[index]);
+    }
+
+    public String getAttributeValue(int index) {
+        checkAttributeIndex(index);
+        return new String(attributeValueBytes, attributeValueStarts[index], attributeValueLengths[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the index of the attribute with the given name id, or -1.
+     */
+    public int getAttributeIndex(int nameId) {
+        if (attributesPending) readAttributes();
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeNameIds[i] == nameId) return i;
+        }
+        return -1;
+    }
+
+    byte[] getAttributeValueBytes() {
+        if (attributesPending) readAttributes();
+        return attributeValueBytes;
+    }
+
+    int getAttributeValueStart(int index) {
+        if (attributesPending) readAttributes();
+        return attributeValueStarts[index];
+    }
+
+    int getAttributeValueLength(int index) {
+        if (attributesPending) readAttributes();
+        return attributeValueLengths[index];
+    }
+
+    /**
+     * Compares the value of an attribute with UTF-8 bytes without decoding it.
+     */
+    boolean attributeValueEquals(int index, byte[] value) {
+        if (attributesPending) readAttributes();
+        int start = attributeValueStarts[index];
+        return Arrays.equals(attributeValueBytes, start, start + attributeValueLengths[index], value, 0, value.length);
     }
 
     public String getAttributeValue(String attributeName) {
-        return attributes.get(attributeName);
+        if (attributesPending) readAttributes();
+        for (int i = 0; i < attributeCount; i++) {
+            if (symbols.getName(attributeNameIds[i]).equals(attributeName))
+                return getAttributeValue(i);
+        }
+        return null;
+    }
+
+    /**
+     * Returns a new map of the attributes of the current element in document order.
+     */
+    public Map<String, String> getAttributes() {
+        if (attributesPending) readAttributes();
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < attributeCount; i++)
+            map.put(getAttributeLocalName(i), getAttributeValue(i));
+        return map;
+    }
+
+    public List<XMLAttribute> getAttributesList() {
+        if (attributesPending) readAttributes();
+        List<XMLAttribute> list = new ArrayList<>(attributeCount);
+        for (int i = 0; i < attributeCount; i++)
+            list.add(new XMLAttribute(getAttributeLocalName(i), getAttributeValue(i)));
+        return list;
     }
 
     public String getText() {
+        if (text == null)
+            text = new String(textBytes, 0, textLength, StandardCharsets.UTF_8);
         return text;
     }
 
+    byte[] getTextBytes() {
+        return textBytes;
+    }
+
+    /**
+     * Returns the length of the UTF-8 text in {@link #getTextBytes()}.
+     */
+    int getTextByteLength() {
+        return textLength;
+    }
+
+    /**
+     * Returns the reader's own buffer holding the text of the current event,
+     * starting at {@link #getTextStart()}. The buffer is reused by the next event.
+     */
+    public char[] getTextCharacters() {
+        decodeText();
+        return textChars;
+    }
+
+    public int getTextStart() {
+        return 0;
+    }
+
+    public int getTextLength() {
+        decodeText();
+        return textCharsLength;
+    }
+
+    /**
+     * Copies text of the current event into {@code target}.
+     *
+     * @return number of chars copied
+     */
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length) {
+        decodeText();
+        int count = Math.max(0, Math.min(length, textCharsLength - sourceStart));
+        System.arraycopy(textChars, sourceStart, target, targetStart, count);
+        return count;
+    }
+
+    /**
+     * Returns a view of the text of the current event. The same instance is
+     * returned for every event, its contents change on {@link #next()}.
+     */
+    public XMLCharSequence getTextView() {
+        decodeText();
+        textView.set(textChars, 0, textCharsLength);
+        return textView;
+    }
+
     public void trimText(boolean trim) {
         lexer.trimText(trim);
     }
 
+    boolean isTrimText() {
+        return lexer.isTrimText();
+    }
+
     public void setIgnoreComments(boolean ignoreComments) {
         this.ignoreComments = ignoreComments;
     }
 
+    /**
+     * Sets the size of the input buffer used for streams, 16 Kb by default.
+     * Must be called before the first {@link #next()}.
+     */
+    public void setBufferSize(int bufferSize) {
+        lexer.setBufferSize(bufferSize);
+    }
+
+    /**
+     * Reads stream input on a background thread, a few buffers ahead of
+     * parsing, and inflates it there if it is gzip compressed. Must be
+     * called before the first {@link #next()}; the reader should then be
+     * closed to stop the thread. Has no effect on files and in-memory input,
+     * which need no reading.
+     */
+    public void setReadAhead(boolean readAhead) throws IOException {
+        if (token != null)
+            throw new IllegalStateException("Read-ahead must be set before parsing starts");
+
+        XMLSource source = lexer.getSource();
+        if (readAhead && source instanceof XMLStreamSource)
+            lexer.setSource(new XMLReadAheadSource(((XMLStreamSource) source).getInputStream()));
+        else if (!readAhead && source instanceof XMLReadAheadSource)
+            lexer.setSource(new XMLStreamSource(((XMLReadAheadSource) source).getInputStream()));
+    }
+
+    /**
+     * Follows a file that is still being written: at the end of the file
+     * the reader waits for appended bytes instead of returning
+     * END_DOCUMENT. {@link #close()}, also from another thread, ends the
+     * document. Must be called before the first {@link #next()}; only
+     * readers of a file or channel can follow.
+     */
+    public void setFollow(boolean follow) throws IOException {
+        if (token != null)
+            throw new IllegalStateException("Follow mode must be set before parsing starts");
+
+        XMLSource source = lexer.getSource();
+        if (follow && source instanceof XMLMappedSource) {
+            XMLMappedSource mapped = (XMLMappedSource) source;
+            boolean closeChannel = mapped.isCloseChannel();
+            lexer.setSource(new XMLFollowSource(mapped.takeChannel(), closeChannel, 0));
+        } else if (!follow && source instanceof XMLFollowSource) {
+            XMLFollowSource followed = (XMLFollowSource) source;
+            boolean closeChannel = followed.isCloseChannel();
+            lexer.setSource(new XMLMappedSource(followed.takeChannel(), closeChannel));
+        } else if (follow && !(source instanceof XMLFollowSource)) {
+            throw new IllegalStateException("Only files can be followed");
+        }
+    }
+
+    /**
+     * Counts bytes, characters, tokens by type, refills and the time spent
+     * in them, the longest text and entity decodes, see {@link #getMetrics()}.
+     * Each document is also reported to JDK Flight Recorder as an
+     * "XML Parse" event when a recording enables it. Off by default, when
+     * the cost is a null check per token. Must be called before the first
+     * {@link #next()}.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        if (token != null)
+            throw new IllegalStateException("Metrics must be enabled before parsing starts");
+        if (enabled == (metrics != null)) return;
+        metrics = enabled ? new XMLMetrics() : null;
+        if (metrics != null) metrics.label = metricsLabel;
+        lexer.setMetrics(metrics);
+    }
+
+    /**
+     * Names the input in metrics and Flight Recorder events, e.g. the feed
+     * it comes from.
+     */
+    public void setMetricsLabel(String label) {
+        metricsLabel = label;
+        if (metrics != null) metrics.label = label;
+    }
+
+    /**
+     * Returns a snapshot of the metrics of the current document.
+     */
+    public XMLParseMetrics getMetrics() {
+        if (metrics == null)
+            throw new IllegalStateException("Metrics are not enabled");
+        return lexer.getMetrics();
+    }
+
+    /**
+     * Leaves the attributes of a start tag untokenized until they are first
+     * read, so elements whose attributes are never looked at cost only a
+     * scan for the end of the tag. On by default; has no effect when the
+     * reader is namespace aware, which needs the declarations right away.
+     * Errors in attributes read lazily are thrown as
+     * {@link UncheckedIOException}.
+     */
+    public void setLazyAttributes(boolean lazyAttributes) {
+        this.lazyAttributes = lazyAttributes;
+    }
+
+    /**
+     * Declares a named entity, so {@code &name;} in text and attribute
+     * values is replaced with {@code value}. It stays declared after
+     * {@link #reset(InputStream)}, declaring the name again replaces the
+     * value. Entities declared in the internal subset of a document's
+     * DOCTYPE take precedence within that document. The value is inserted
+     * as text, markup in it is not parsed.
+     *
+     * @throws IllegalArgumentException if the name is not valid or is one of
+     * the predefined entities, which cannot be redeclared
+     */
+    public void declareEntity(String name, String value) {
+        if (name.isEmpty())
+            throw new IllegalArgumentException("Entity name is empty");
+        for (int i = 0; i < name.length(); i++) {
+            char character = name.charAt(i);
+            // 32 - whitespace
+            if (character <= 32 || character == '&' || character == ';' || character == '#')
+                throw new IllegalArgumentException("Invalid entity name: " + name);
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (XMLEntityTable.PREDEFINED.get(nameBytes) != null)
+            throw new IllegalArgumentException("Predefined entity cannot be redeclared: " + name);
+        lexer.declareEntity(nameBytes, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sets how many bytes entity references may add to a document beyond
+     * their own length, 50 Mb by default; {@link #next()} throws an
+     * IOException past it. It guards against entities that expand each
+     * other, like the billion laughs attack, in untrusted documents.
+     * Character references and the predefined entities never add bytes.
+     */
+    public void setEntityExpansionLimit(long limit) {
+        lexer.setEntityExpansionLimit(limit);
+    }
+
+    /**
+     * Sets the initial and maximum size of a single token, 4 Kb and 64 Mb by
+     * default. Text longer than the maximum is reported as several
+     * CHARACTERS events. Must be called before the first {@link #next()}.
+     */
+    public void setTokenBufferSize(int initialSize, int maxSize) {
+        lexer.setTokenBufferSize(initialSize, maxSize);
+    }
+
     public boolean hasNext() {
         return event != XMLReaderConstants.END_DOCUMENT;
     }
 
     public int next() throws IOException {
+        popNamespaces();
         if (lexer.hasNext()) {
             while (true) {
                 if (token == null) {
@@ -84,66 +674,70 @@ public class XMLReader {
 
                 // If tag is self-closing, it needs to be return twice as START_ELEMENT and END_ELEMENT
                 if (lastTag.equals("/>")) {
-                    String tempName = tagName;
-                    clearData();
-                    tagName = tempName;
+                    clearText();
+                    clearAttributes();
                     lastTag = "";
-                    return XMLReaderConstants.END_ELEMENT;
+                    depth--;
+                    event = XMLReaderConstants.END_ELEMENT;
+                    return event;
                 }
 
                 token = lexer.nextToken();
                 switch (token.getType()) {
                     case XMLTokenConstants.PROCESSING_INSTRUCTION_OPEN, XMLTokenConstants.TAG_OPEN -> {
                         clearData();
+                        inStartTag = token.getType() == XMLTokenConstants.TAG_OPEN;
                     }
                     case XMLTokenConstants.PROCESSING_INSTRUCTION_CLOSE -> {
-                        lastTag = token.getValue();
+                        lastTag = "?>";
                         event = XMLReaderConstants.PROCESSING_INSTRUCTION;
                         return event;
                     }
-                    case XMLTokenConstants.NAME -> tagName = token.getValue();
-                    case XMLTokenConstants.ATTR_NAME -> attribute.setAttributeName(token.getValue());
-                    case XMLTokenConstants.ATTR_VALUE -> {
-                        attribute.setAttributeValue(token.getValue());
-                        attributes.put(attribute.getAttributeName(), attribute.getAttributeValue());
-                        attribute = new XMLAttribute();
+                    case XMLTokenConstants.NAME -> {
+                        nameId = internName(token);
+                        prefixId = internedPrefixId;
+                        // Namespace declarations are needed right away
+                        if (lazyAttributes && inStartTag && !namespaceAware) {
+                            token = lexer.skipAttributes();
+                            attributesPending = true;
+                            return startElement();
+                        }
                     }
+                    case XMLTokenConstants.ATTR_NAME -> addAttributeName(internName(token));
+                    case XMLTokenConstants.ATTR_VALUE -> addAttributeValue(token);
                     case XMLTokenConstants.TAG_CLOSE -> {
-                        if (token.getValue().equals("/>")) {
-                            lastTag = "/>";
-                        }
-                        event = XMLReaderConstants.START_ELEMENT;
-                        return event;
+                        return startElement();
                     }
                     case XMLTokenConstants.CONTENT -> {
                         clearData();
-                        text = token.getValue();
+                        setText(token);
                         event = XMLReaderConstants.CHARACTERS;
                         return event;
                     }
                     case XMLTokenConstants.END_TAG -> {
-                        attributes.clear();
-                        text = "";
-                        tagName = token.getValue();
+                        clearAttributes();
+                        clearText();
+                        setEndName(token);
+                        depth--;
                         event = XMLReaderConstants.END_ELEMENT;
                         return event;
                     }
                     case XMLTokenConstants.DOCTYPE -> {
                         clearData();
-                        text = token.getValue();
+                        setText(token);
                         event = XMLReaderConstants.DTD;
                         return event;
                     }
                     case XMLTokenConstants.CDATA -> {
                         clearData();
-                        text = token.getValue();
+                        setText(token);
                         event = XMLReaderConstants.CDATA;
                         return event;
                     }
                     case XMLTokenConstants.COMMENT -> {
                         if (!ignoreComments) {
                             clearData();
-                            text = token.getValue();
+                            setText(token);
                             event = XMLReaderConstants.COMMENT;
                             return event;
                         }
@@ -161,9 +755,418 @@ public class XMLReader {
         return event;
     }
 
+    private int startElement() throws IOException {
+        // Self-closing tag close is "/>", normal one is ">"
+        if (token.getLength() == 2) {
+            lastTag = "/>";
+        }
+        depth++;
+        if (namespaceAware) declareNamespaces();
+        event = XMLReaderConstants.START_ELEMENT;
+        return event;
+    }
+
+    /**
+     * Reads the text of the current element up to its END_ELEMENT, where the
+     * reader is left. Nested elements are skipped; when text is trimmed the
+     * text nodes are joined with a space. Must be called on START_ELEMENT.
+     */
+    public String getElementText() throws IOException {
+        int length = readElementText();
+        return new String(elementTextBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Like {@link #getElementText()} but leaves the UTF-8 text in
+     * {@link #getElementTextBytes()} and returns its length.
+     */
+    int readElementText() throws IOException {
+        if (event != XMLReaderConstants.START_ELEMENT)
+            throw new IllegalStateException("getElementText() must be called on START_ELEMENT");
+
+        int elementDepth = depth;
+        int length = 0;
+        boolean separate = lexer.isTrimText();
+
+        while (true) {
+            switch (next()) {
+                case XMLReaderConstants.CHARACTERS, XMLReaderConstants.CDATA -> {
+                    int required = length + textLength + 1;
+                    if (required > elementTextBytes.length)
+                        elementTextBytes = Arrays.copyOf(elementTextBytes, Math.max(required, elementTextBytes.length * 2));
+                    if (separate && length > 0 && textLength > 0) elementTextBytes[length++] = ' ';
+                    System.arraycopy(textBytes, 0, elementTextBytes, length, textLength);
+                    length += textLength;
+                }
+                case XMLReaderConstants.START_ELEMENT -> skipElement();
+                case XMLReaderConstants.END_ELEMENT -> {
+                    if (depth < elementDepth) return length;
+                }
+                case XMLReaderConstants.END_DOCUMENT -> throw new IOException("Unexpected end of document");
+            }
+        }
+    }
+
+    byte[] getElementTextBytes() {
+        return elementTextBytes;
+    }
+
+    /**
+     * Returns whether the current START_ELEMENT is self-closing, so its
+     * END_ELEMENT follows without reading input.
+     */
+    boolean isEmptyElement() {
+        return lastTag.equals("/>");
+    }
+
+    /**
+     * Skips everything up to the end tag of the current element without
+     * tokenizing it. Must be called on START_ELEMENT, the reader is then
+     * positioned on the matching END_ELEMENT.
+     */
+    public int skipElement() throws IOException {
+        if (event != XMLReaderConstants.START_ELEMENT)
+            throw new IllegalStateException("skipElement() must be called on START_ELEMENT");
+
+        // A self-closing tag has nothing to skip
+        if (!lastTag.equals("/>")) {
+            token = lexer.skipElement();
+            setEndName(token);
+        }
+        lastTag = "";
+        clearAttributes();
+        clearText();
+        depth--;
+        event = XMLReaderConstants.END_ELEMENT;
+        return event;
+    }
+
+    /**
+     * Scans ahead in document order for the next start tag named
+     * {@code name}, without tokenizing anything before it. The current
+     * element is not matched.
+     *
+     * @return true if the reader is positioned on that START_ELEMENT, false
+     * if the document ended first and the reader is on END_DOCUMENT
+     */
+    public boolean skipToElement(String name) throws IOException {
+        if (event == XMLReaderConstants.END_DOCUMENT) return false;
+
+        if (!name.equals(skipName)) {
+            skipName = name;
+            skipNameBytes = name.getBytes(StandardCharsets.UTF_8);
+        }
+
+        // Tags passed by a raw scan could declare namespaces, so every tag is read
+        if (namespaceAware) {
+            int id = symbols.intern(skipNameBytes, 0, skipNameBytes.length);
+            while (hasNext()) {
+                if (next() == XMLReaderConstants.START_ELEMENT && nameId == id) return true;
+            }
+            return false;
+        }
+        // START_DOCUMENT and a pending END_ELEMENT of a self-closing tag are skipped too
+        if (token == null) token = new XMLToken();
+        if (lastTag.equals("/>")) depth--;
+        lastTag = "";
+        clearData();
+
+        boolean found = lexer.skipToStartTag(skipNameBytes);
+        depth += lexer.getSkippedDepth();
+        inStartTag = true;
+        if (!found) {
+            event = XMLReaderConstants.END_DOCUMENT;
+            return false;
+        }
+        return next() == XMLReaderConstants.START_ELEMENT;
+    }
+
+    /**
+     * Returns the position after the current event, from which
+     * {@link #resume(XMLCheckpoint)} continues the document in another
+     * reader of the same file.
+     */
+    public XMLCheckpoint checkpoint() {
+        if (token == null)
+            throw new IllegalStateException("checkpoint() must be called after next()");
+
+        int count = bindingCount;
+        int[] starts = new int[depth];
+        if (namespaceAware) {
+            // Declarations of an element are only dropped after its END_ELEMENT
+            if (event == XMLReaderConstants.END_ELEMENT) count = bindingStarts[depth + 1];
+            System.arraycopy(bindingStarts, 1, starts, 0, depth);
+        }
+        String[] prefixes = new String[count];
+        String[] uris = new String[count];
+        for (int i = 0; i < count; i++) {
+            prefixes[i] = bindingPrefixIds[i] == -1 ? "" : symbols.getName(bindingPrefixIds[i]);
+            uris[i] = bindingNamespaceIds[i] == -1 ? "" : namespaces.getName(bindingNamespaceIds[i]);
+        }
+
+        String pendingEnd = null;
+        if (lastTag.equals("/>"))
+            pendingEnd = prefixId == -1 ? getLocalName() : getPrefix() + ":" + getLocalName();
+        return new XMLCheckpoint(lexer.getOffset(), depth, namespaceAware, starts, prefixes, uris,
+                pendingEnd, lexer.getSplitText(), lexer.getDoctypeEntities());
+    }
+
+    /**
+     * Continues a document from a checkpoint taken in an earlier reader of
+     * the same file, which may have grown since. The next {@link #next()}
+     * returns the event after the one the checkpoint was taken on. Must be
+     * called before the first {@link #next()}, with the same namespace
+     * awareness as the earlier reader.
+     */
+    public void resume(XMLCheckpoint checkpoint) throws IOException {
+        if (token != null)
+            throw new IllegalStateException("resume() must be called before parsing starts");
+        if (checkpoint.namespaceAware != namespaceAware)
+            throw new IllegalArgumentException("Checkpoint was taken with namespace awareness " + checkpoint.namespaceAware);
+
+        XMLSource source = lexer.getSource();
+        if (source instanceof XMLMappedSource)
+            ((XMLMappedSource) source).seek(checkpoint.offset);
+        else if (source instanceof XMLFollowSource)
+            ((XMLFollowSource) source).seek(checkpoint.offset);
+        else
+            throw new IllegalStateException("Only files can be resumed");
+        lexer.setSource(source, checkpoint.offset);
+        lexer.setDoctypeEntities(checkpoint.entities);
+        if (checkpoint.splitTail != null) lexer.resumeSplitText(checkpoint.splitTail);
+
+        restart();
+        token = new XMLToken();
+        depth = checkpoint.depth;
+        if (namespaceAware) {
+            internReservedPrefixes();
+            if (depth >= bindingStarts.length)
+                bindingStarts = Arrays.copyOf(bindingStarts, depth * 2);
+            System.arraycopy(checkpoint.bindingStarts, 0, bindingStarts, 1, depth);
+            for (int i = 0; i < checkpoint.prefixes.length; i++) {
+                String prefix = checkpoint.prefixes[i];
+                String uri = checkpoint.namespaces[i];
+                bind(prefix.isEmpty() ? -1 : symbols.intern(prefix), uri.isEmpty() ? -1 : namespaces.intern(uri));
+            }
+        }
+
+        if (checkpoint.pendingEnd != null) {
+            // The END_ELEMENT of a self-closing element comes first
+            lastTag = "/>";
+            String name = checkpoint.pendingEnd;
+            int colon = namespaceAware ? name.indexOf(':') : -1;
+            nameId = symbols.intern(colon == -1 ? name : name.substring(colon + 1));
+            prefixId = colon == -1 ? -1 : symbols.intern(name.substring(0, colon));
+            if (namespaceAware) namespaceId = resolve(prefixId);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lexer.close();
+    }
+
     private void clearData() {
+        clearText();
+        nameId = -1;
+        prefixId = -1;
+        namespaceId = -1;
+        clearAttributes();
+    }
+
+    private void clearText() {
+        textLength = 0;
+        textCharsLength = 0;
         text = "";
-        tagName = "";
-        attributes.clear();
+    }
+
+    private void clearAttributes() {
+        attributesPending = false;
+        attributeCount = 0;
+        attributeValueEnd = 0;
+    }
+
+    private void addAttributeName(int nameId) {
+        if (attributeCount == attributeNameIds.length) {
+            int length = attributeCount * 2;
+            attributeNameIds = Arrays.copyOf(attributeNameIds, length);
+            attributeValueStarts = Arrays.copyOf(attributeValueStarts, length);
+            attributeValueLengths = Arrays.copyOf(attributeValueLengths, length);
+            attributePrefixIds = Arrays.copyOf(attributePrefixIds, length);
+            attributeNamespaceIds = Arrays.copyOf(attributeNamespaceIds, length);
+        }
+        attributeNameIds[attributeCount] = nameId;
+        attributePrefixIds[attributeCount] = internedPrefixId;
+        attributeNamespaceIds[attributeCount] = -1;
+    }
+
+    private void addAttributeValue(XMLToken token) {
+        int length = token.getLength();
+        if (attributeValueEnd + length > attributeValueBytes.length)
+            attributeValueBytes = Arrays.copyOf(attributeValueBytes, Math.max(attributeValueEnd + length, attributeValueBytes.length * 2));
+
+        System.arraycopy(token.getStringBuffer(), 0, attributeValueBytes, attributeValueEnd, length);
+        attributeValueStarts[attributeCount] = attributeValueEnd;
+        attributeValueLengths[attributeCount] = length;
+        attributeValueEnd += length;
+        attributeCount++;
+    }
+
+    /**
+     * Tokenizes the attributes the lexer passed over for the current start tag.
+     */
+    private void readAttributes() {
+        attributesPending = false;
+        try {
+            while (true) {
+                XMLToken attribute = lexer.nextAttributeToken();
+                switch (attribute.getType()) {
+                    case XMLTokenConstants.ATTR_NAME -> addAttributeName(internName(attribute));
+                    case XMLTokenConstants.ATTR_VALUE -> addAttributeValue(attribute);
+                    case XMLTokenConstants.TAG_CLOSE -> {
+                        return;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void checkAttributeIndex(int index) {
+        if (attributesPending) readAttributes();
+        if (index < 0 || index >= attributeCount)
+            throw new IndexOutOfBoundsException(index);
+    }
+
+    private int intern(XMLToken token) {
+        return symbols.intern(token.getStringBuffer(), 0, token.getLength());
+    }
+
+    /**
+     * Interns an element or attribute name. When namespace aware, returns
+     * the id of the local name and leaves the prefix in internedPrefixId.
+     */
+    private int internName(XMLToken token) {
+        internedPrefixId = -1;
+        if (!namespaceAware) return intern(token);
+
+        byte[] bytes = token.getStringBuffer();
+        int length = token.getLength();
+        int colon = 0;
+        while (colon < length && bytes[colon] != ':') colon++;
+        if (colon == length) return symbols.intern(bytes, 0, length);
+
+        internedPrefixId = symbols.intern(bytes, 0, colon);
+        return symbols.intern(bytes, colon + 1, length - colon - 1);
+    }
+
+    private void setEndName(XMLToken token) throws IOException {
+        nameId = internName(token);
+        prefixId = internedPrefixId;
+        // Declarations of the element are still in scope here
+        if (namespaceAware) namespaceId = resolve(prefixId);
+    }
+
+    /**
+     * Moves the namespace declarations of the current start tag from the
+     * attributes to the binding stack, then resolves the element and
+     * attribute prefixes.
+     */
+    private void declareNamespaces() throws IOException {
+        internReservedPrefixes();
+        if (depth == bindingStarts.length)
+            bindingStarts = Arrays.copyOf(bindingStarts, depth * 2);
+        bindingStarts[depth] = bindingCount;
+
+        int kept = 0;
+        for (int i = 0; i < attributeCount; i++) {
+            int prefix = attributePrefixIds[i];
+            int name = attributeNameIds[i];
+            if (prefix == xmlnsPrefixId) {
+                bind(name, internNamespace(i));
+            } else if (prefix == -1 && name == xmlnsPrefixId) {
+                bind(-1, internNamespace(i));
+            } else {
+                attributeNameIds[kept] = name;
+                attributePrefixIds[kept] = prefix;
+                attributeValueStarts[kept] = attributeValueStarts[i];
+                attributeValueLengths[kept] = attributeValueLengths[i];
+                kept++;
+            }
+        }
+        attributeCount = kept;
+
+        namespaceId = resolve(prefixId);
+        // Unprefixed attributes are in no namespace
+        for (int i = 0; i < attributeCount; i++)
+            attributeNamespaceIds[i] = attributePrefixIds[i] == -1 ? -1 : resolve(attributePrefixIds[i]);
+    }
+
+    private void internReservedPrefixes() {
+        if (prefixSymbols != symbols) {
+            xmlPrefixId = symbols.intern("xml");
+            xmlnsPrefixId = symbols.intern("xmlns");
+            prefixSymbols = symbols;
+        }
+    }
+
+    private int internNamespace(int attribute) {
+        int length = attributeValueLengths[attribute];
+        return length == 0 ? -1 : namespaces.intern(attributeValueBytes, attributeValueStarts[attribute], length);
+    }
+
+    private void bind(int prefix, int namespace) {
+        if (bindingCount == bindingPrefixIds.length) {
+            bindingPrefixIds = Arrays.copyOf(bindingPrefixIds, bindingCount * 2);
+            bindingNamespaceIds = Arrays.copyOf(bindingNamespaceIds, bindingCount * 2);
+        }
+        bindingPrefixIds[bindingCount] = prefix;
+        bindingNamespaceIds[bindingCount] = namespace;
+        bindingCount++;
+    }
+
+    private int resolve(int prefix) throws IOException {
+        for (int i = bindingCount - 1; i >= 0; i--) {
+            if (bindingPrefixIds[i] == prefix) return bindingNamespaceIds[i];
+        }
+        if (prefix == -1) return -1;
+        if (prefix == xmlPrefixId) return xmlNamespaceId;
+        throw new IOException("Unbound namespace prefix \"" + symbols.getName(prefix) + "\"");
+    }
+
+    /**
+     * Drops the declarations of an element once the event after its
+     * END_ELEMENT is read.
+     */
+    private void popNamespaces() {
+        if (namespaceAware && event == XMLReaderConstants.END_ELEMENT)
+            bindingCount = bindingStarts[depth + 1];
+    }
+
+    private int namespaceStart() {
+        if (event == XMLReaderConstants.START_ELEMENT) return bindingStarts[depth];
+        if (event == XMLReaderConstants.END_ELEMENT) return bindingStarts[depth + 1];
+        return bindingCount;
+    }
+
+    private int checkNamespaceIndex(int index) {
+        if (!namespaceAware || index < 0 || index >= getNamespaceCount())
+            throw new IndexOutOfBoundsException(index);
+        return namespaceStart() + index;
+    }
+
+    private void setText(XMLToken token) {
+        textBytes = token.getStringBuffer();
+        textLength = token.getLength();
+        textCharsLength = -1;
+        text = null;
+    }
+
+    private void decodeText() {
+        if (textCharsLength != -1) return;
+        if (textChars.length < textLength)
+            textChars = new char[Math.max(textLength, textChars.length * 2)];
+        textCharsLength = XMLUtf8.decode(textBytes, 0, textLength, textChars);
     }
 }
\ No newline at end of file
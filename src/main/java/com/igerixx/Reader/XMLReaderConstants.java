@@ -15,4 +15,6 @@ public final class XMLReaderConstants {
     public static final int NAMESPACE = 12;
     public static final int NOTATION_DECLARATION = 13;
     public static final int ENTITY_DECLARATION = 14;
+    // XMLAsyncReader needs more input before the next event
+    public static final int EVENT_INCOMPLETE = 15;
 }
@@ -0,0 +1,211 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps idle readers for parsing many small documents, such as messages,
+ * without building a reader for each one. {@link #acquire(InputStream)}
+ * resets an idle reader on the new input and {@link #release(XMLReader)}
+ * hands it back.
+ * <p>
+ * The pool is thread-safe and takes no locks, so acquiring and releasing
+ * never blocks a thread, virtual or not. All readers share the pool's
+ * symbol table, so name ids are the same in every reader. Settings are
+ * applied to every acquired reader and must be made before the pool is
+ * shared.
+ * <p>
+ * An acquired reader starts from the defaults of a new reader plus the
+ * settings of the pool. Whatever a user changed on it, such as declared
+ * entities, lazy attributes, metrics, read-ahead or buffer sizes, does not
+ * carry over to the next user.
+ */
+public class XMLReaderPool {
+    // Documents parsed by one task of parseAll
+    private static final int BATCH_SIZE = 64;
+
+    private final ConcurrentLinkedQueue<XMLReader> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final int maxIdle;
+    private XMLSymbolTable symbols = new XMLSymbolTable();
+    private boolean trimText = true;
+    private boolean ignoreComments = false;
+    private boolean namespaceAware = false;
+
+    /**
+     * Keeps up to four idle readers per core.
+     */
+    public XMLReaderPool() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param maxIdle number of idle readers kept, readers released beyond
+     * it are dropped
+     */
+    public XMLReaderPool(int maxIdle) {
+        if (maxIdle < 0)
+            throw new IllegalArgumentException("Max idle readers must not be negative");
+        this.maxIdle = maxIdle;
+    }
+
+    public XMLSymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public void setSymbolTable(XMLSymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    public void trimText(boolean trim) {
+        this.trimText = trim;
+    }
+
+    public void setIgnoreComments(boolean ignoreComments) {
+        this.ignoreComments = ignoreComments;
+    }
+
+    public void setNamespaceAware(boolean namespaceAware) {
+        this.namespaceAware = namespaceAware;
+    }
+
+    /**
+     * Returns a reader positioned before the START_DOCUMENT of {@code is}.
+     * The stream is not closed by the pool.
+     */
+    public XMLReader acquire(InputStream is) throws IOException {
+        XMLReader reader = idle.poll();
+        if (reader == null) {
+            reader = new XMLReader(is);
+        } else {
+            idleCount.decrementAndGet();
+            reader.reset(is);
+            reader.restoreDefaults();
+        }
+        return configure(reader);
+    }
+
+    /**
+     * Returns a reader positioned before the START_DOCUMENT of the UTF-8
+     * {@code document}, which is parsed in place.
+     */
+    public XMLReader acquire(byte[] document) throws IOException {
+        XMLReader reader = idle.poll();
+        if (reader == null) {
+            reader = new XMLReader(document);
+        } else {
+            idleCount.decrementAndGet();
+            reader.reset(document);
+            reader.restoreDefaults();
+        }
+        return configure(reader);
+    }
+
+    /**
+     * Hands a reader back. It must not be used by the caller afterwards.
+     */
+    public void release(XMLReader reader) {
+        if (idleCount.incrementAndGet() <= maxIdle)
+            idle.offer(reader);
+        else
+            idleCount.decrementAndGet();
+    }
+
+    /**
+     * Parses one document with a pooled reader. {@code mapper} is called
+     * with the reader on the root START_ELEMENT, so e.g. an
+     * {@link XMLBinder#bind(XMLReader)} can be passed.
+     */
+    public <T> T parse(byte[] document, XMLRecordMapper<? extends T> mapper) throws IOException {
+        XMLReader reader = acquire(document);
+        try {
+            return map(reader, mapper);
+        } finally {
+            release(reader);
+        }
+    }
+
+    /**
+     * Parses the documents on {@code executor}, e.g. a fork/join pool or a
+     * virtual thread per task executor, and waits for all of them. Each
+     * task parses a run of documents with one pooled reader.
+     *
+     * @return the results in the order of {@code documents}
+     */
+    public <T> List<T> parseAll(List<byte[]> documents, XMLRecordMapper<? extends T> mapper,
+                                Executor executor) throws IOException {
+        Object[] results = new Object[documents.size()];
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < results.length; start += BATCH_SIZE) {
+            int from = start;
+            int to = Math.min(start + BATCH_SIZE, results.length);
+            tasks.add(CompletableFuture.runAsync(() -> {
+                try {
+                    parseRange(documents, from, to, mapper, results);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+
+        try {
+            for (CompletableFuture<Void> task : tasks) join(task);
+        } finally {
+            for (CompletableFuture<Void> task : tasks) task.cancel(false);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<T> list = (List<T>) Arrays.asList(results);
+        return list;
+    }
+
+    private void parseRange(List<byte[]> documents, int from, int to,
+                            XMLRecordMapper<?> mapper, Object[] results) throws IOException {
+        XMLReader reader = acquire(documents.get(from));
+        try {
+            for (int i = from; i < to; i++) {
+                if (i > from) reader.reset(documents.get(i));
+                results[i] = map(reader, mapper);
+            }
+        } finally {
+            release(reader);
+        }
+    }
+
+    private XMLReader configure(XMLReader reader) {
+        reader.setSymbolTable(symbols);
+        reader.trimText(trimText);
+        reader.setIgnoreComments(ignoreComments);
+        reader.setNamespaceAware(namespaceAware);
+        return reader;
+    }
+
+    private static <T> T map(XMLReader reader, XMLRecordMapper<T> mapper) throws IOException {
+        while (reader.next() != XMLReaderConstants.START_ELEMENT) {
+            if (reader.getEventType() == XMLReaderConstants.END_DOCUMENT)
+                throw new IOException("Document has no root element");
+        }
+        return mapper.map(reader);
+    }
+
+    private static <T> T join(CompletableFuture<T> task) throws IOException {
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.igerixx.Reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sparse index of the records of a large file, such as the items of
+ * {@code <catalog><item/>...</catalog>}, for starting to parse at any
+ * record without parsing what comes before it:
+ * <pre>
+ * XMLRecordIndex index = XMLRecordIndex.open(path, "item", 1000);
+ * try (XMLReader reader = index.seek(8_000_000)) {
+ *     // on the START_ELEMENT of record 8,000,000
+ * }
+ * </pre>
+ * Every {@code interval}th record start tag is listed with its byte offset
+ * and the start tags of the elements open around it. A seek parses the
+ * DOCTYPE of the file and those start tags, so entities, depth and
+ * namespace bindings are in place, continues the same reader at the listed
+ * offset and skips the records up to the wanted one without tokenizing them.
+ * <p>
+ * Records are counted from 0 in document order; a record element inside
+ * another one is not a record of its own. The index is saved next to the
+ * file, with ".idx" appended to its name, and built again when the file's
+ * size or modification time has changed.
+ */
+public class XMLRecordIndex {
+    private static final int MAGIC = 0x584D4C49; // "XMLI"
+    // Version 1 had no DOCTYPE
+    private static final int VERSION = 2;
+
+    private final Path document;
+    private final String recordName;
+    private final int interval;
+    private final long size;
+    private final long modified;
+    private final long recordCount;
+    // DOCTYPE of the document as UTF-8, empty if it has none
+    private final byte[] doctype;
+    // Offset of every interval-th record and the index of its context
+    private final long[] offsets;
+    private final int[] contextIds;
+    // Start tags of the open elements, as UTF-8, and how many there are
+    private final byte[][] contexts;
+    private final int[] contextDepths;
+
+    private boolean trimText = true;
+    private boolean ignoreComments = false;
+    private boolean namespaceAware = false;
+
+    private XMLRecordIndex(Path document, String recordName, int interval, long size, long modified, long recordCount,
+                           byte[] doctype, long[] offsets, int[] contextIds, byte[][] contexts, int[] contextDepths) {
+        this.document = document;
+        this.recordName = recordName;
+        this.interval = interval;
+        this.size = size;
+        this.modified = modified;
+        this.recordCount = recordCount;
+        this.doctype = doctype;
+        this.offsets = offsets;
+        this.contextIds = contextIds;
+        this.contexts = contexts;
+        this.contextDepths = contextDepths;
+    }
+
+    /**
+     * Loads the saved index of {@code document}, or builds and saves it if
+     * there is none for the current file, record name and interval.
+     *
+     * @param interval number of records between two listed ones
+     */
+    public static XMLRecordIndex open(Path document, String recordName, int interval) throws IOException {
+        if (recordName.isEmpty())
+            throw new IllegalArgumentException("Record name is empty");
+        if (interval < 1)
+            throw new IllegalArgumentException("Interval must be positive");
+
+        Path absolute = document.toAbsolutePath().normalize();
+        Path saved = absolute.resolveSibling(absolute.getFileName() + ".idx");
+        BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        XMLRecordIndex index = load(saved, absolute, recordName, interval, size, modified);
+        if (index == null) {
+            index = build(absolute, recordName, interval, size, modified);
+            index.save(saved);
+        }
+        return index;
+    }
+
+    public void trimText(boolean trim) {
+        this.trimText = trim;
+    }
+
+    public void setIgnoreComments(boolean ignoreComments) {
+        this.ignoreComments = ignoreComments;
+    }
+
+    public void setNamespaceAware(boolean namespaceAware) {
+        this.namespaceAware = namespaceAware;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns a new reader on the START_ELEMENT of record {@code recordNumber},
+     * with the settings of this index. The reader must be closed.
+     */
+    public XMLReader seek(long recordNumber) throws IOException {
+        if (recordNumber < 0 || recordNumber >= recordCount)
+            throw new IndexOutOfBoundsException(recordNumber);
+        BasicFileAttributes attributes = Files.readAttributes(document, BasicFileAttributes.class);
+        if (attributes.size() != size || attributes.lastModifiedTime().toMillis() != modified)
+            throw new IOException("Document has changed since it was indexed");
+
+        int entry = (int) (recordNumber / interval);
+        int context = contextIds[entry];
+        byte[] input = Arrays.copyOf(doctype, doctype.length + contexts[context].length);
+        System.arraycopy(contexts[context], 0, input, doctype.length, contexts[context].length);
+        XMLReader reader = new XMLReader(input);
+        reader.trimText(trimText);
+        reader.setIgnoreComments(ignoreComments);
+        reader.setNamespaceAware(namespaceAware);
+        try {
+            // --- Declare the entities and open the elements around the record ---
+            // START_DOCUMENT, the DTD and a START_ELEMENT per open element
+            int events = 1 + (doctype.length > 0 ? 1 : 0) + contextDepths[context];
+            for (int i = 0; i < events; i++) reader.next();
+
+            // --- Continue in the file ---
+            FileChannel channel = FileChannel.open(document, StandardOpenOption.READ);
+            reader.getLexer().setSource(new XMLMappedSource(channel, true, offsets[entry], -1), offsets[entry]);
+
+            long number = (long) entry * interval;
+            while (true) {
+                int event = reader.next();
+                if (event == XMLReaderConstants.START_ELEMENT && isRecord(reader)) {
+                    if (number == recordNumber) return reader;
+                    number++;
+                    reader.skipElement();
+                } else if (event == XMLReaderConstants.END_DOCUMENT) {
+                    throw new IOException("Document ended before record " + recordNumber);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    private boolean isRecord(XMLReader reader) {
+        if (!reader.isNamespaceAware()) return reader.getLocalName().equals(recordName);
+        String prefix = reader.getPrefix();
+        String localName = reader.getLocalName();
+        if (prefix.isEmpty()) return localName.equals(recordName);
+        return recordName.length() == prefix.length() + 1 + localName.length()
+                && recordName.startsWith(prefix) && recordName.charAt(prefix.length()) == ':'
+                && recordName.endsWith(localName);
+    }
+
+    // --- Indexing pass ---
+
+    private static XMLRecordIndex build(Path document, String recordName, int interval, long size, long modified) throws IOException {
+        long[] offsets = new long[64];
+        int[] contextIds = new int[64];
+        int entryCount = 0;
+        List<byte[]> contexts = new ArrayList<>();
+        int[] contextDepths = new int[16];
+        long recordCount = 0;
+        byte[] doctype = new byte[0];
+
+        try (XMLReader reader = new XMLReader(document)) {
+            reader.setIgnoreComments(true);
+            int recordId = reader.getSymbolTable().intern(recordName);
+            XMLLexer lexer = reader.getLexer();
+            List<String> open = new ArrayList<>();
+            // The context is only built again after the open elements changed
+            boolean changed = true;
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLReaderConstants.START_ELEMENT -> {
+                        if (reader.getNameId() != recordId) {
+                            open.add(startTag(reader));
+                            changed = true;
+                            continue;
+                        }
+
+                        if (recordCount % interval == 0) {
+                            if (changed) {
+                                if (contexts.size() == contextDepths.length)
+                                    contextDepths = Arrays.copyOf(contextDepths, contextDepths.length * 2);
+                                contextDepths[contexts.size()] = open.size();
+                                contexts.add(String.join("", open).getBytes(StandardCharsets.UTF_8));
+                                changed = false;
+                            }
+                            if (entryCount == offsets.length) {
+                                offsets = Arrays.copyOf(offsets, entryCount * 2);
+                                contextIds = Arrays.copyOf(contextIds, entryCount * 2);
+                            }
+                            offsets[entryCount] = lexer.getTagStart();
+                            contextIds[entryCount] = contexts.size() - 1;
+                            entryCount++;
+                        }
+                        recordCount++;
+                        reader.skipElement();
+                    }
+                    case XMLReaderConstants.END_ELEMENT -> {
+                        open.remove(open.size() - 1);
+                        changed = true;
+                    }
+                    case XMLReaderConstants.DTD -> doctype = doctype(reader);
+                }
+            }
+        }
+
+        return new XMLRecordIndex(document, recordName, interval, size, modified, recordCount, doctype,
+                Arrays.copyOf(offsets, entryCount), Arrays.copyOf(contextIds, entryCount),
+                contexts.toArray(new byte[0][]), Arrays.copyOf(contextDepths, contexts.size()));
+    }
+
+    /**
+     * Writes the start tag of the current element again, with its
+     * attribute values escaped.
+     */
+    static String startTag(XMLReader reader) {
+        StringBuilder tag = new StringBuilder("<").append(reader.getLocalName());
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            tag.append(' ').append(reader.getAttributeLocalName(i)).append("=\"");
+            String value = reader.getAttributeValue(i);
+            for (int c = 0; c < value.length(); c++) {
+                char character = value.charAt(c);
+                switch (character) {
+                    case '&' -> tag.append("&amp;");
+                    case '<' -> tag.append("&lt;");
+                    case '"' -> tag.append("&quot;");
+                    default -> tag.append(character);
+                }
+            }
+            tag.append('"');
+        }
+        return tag.append('>').toString();
+    }
+
+    /**
+     * Writes the DOCTYPE of the current DTD event again, as UTF-8.
+     */
+    static byte[] doctype(XMLReader reader) {
+        byte[] open = "<!DOCTYPE ".getBytes(StandardCharsets.US_ASCII);
+        int length = reader.getTextByteLength();
+        byte[] doctype = Arrays.copyOf(open, open.length + length + 1);
+        System.arraycopy(reader.getTextBytes(), 0, doctype, open.length, length);
+        doctype[doctype.length - 1] = '>';
+        return doctype;
+    }
+
+    // --- Saved index ---
+
+    private void save(Path saved) throws IOException {
+        Path temporary = Files.createTempFile(saved.getParent(), saved.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeUTF(recordName);
+                out.writeInt(interval);
+                out.writeLong(recordCount);
+                out.writeInt(doctype.length);
+                out.write(doctype);
+
+                out.writeInt(contexts.length);
+                for (int i = 0; i < contexts.length; i++) {
+                    out.writeInt(contextDepths[i]);
+                    out.writeInt(contexts[i].length);
+                    out.write(contexts[i]);
+                }
+                out.writeInt(offsets.length);
+                for (int i = 0; i < offsets.length; i++) {
+                    out.writeLong(offsets[i]);
+                    out.writeInt(contextIds[i]);
+                }
+            }
+            Files.move(temporary, saved, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return the saved index, or null if there is none for this file,
+     * record name and interval
+     */
+    private static XMLRecordIndex load(Path saved, Path document, String recordName, int interval,
+                                       long size, long modified) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(saved)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readLong() != size || in.readLong() != modified
+                    || !in.readUTF().equals(recordName) || in.readInt() != interval)
+                return null;
+            long recordCount = in.readLong();
+            byte[] doctype = in.readNBytes(in.readInt());
+
+            int contextCount = in.readInt();
+            byte[][] contexts = new byte[contextCount][];
+            int[] contextDepths = new int[contextCount];
+            for (int i = 0; i < contextCount; i++) {
+                contextDepths[i] = in.readInt();
+                contexts[i] = in.readNBytes(in.readInt());
+            }
+            int entryCount = in.readInt();
+            long[] offsets = new long[entryCount];
+            int[] contextIds = new int[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                offsets[i] = in.readLong();
+                contextIds[i] = in.readInt();
+            }
+            return new XMLRecordIndex(document, recordName, interval, size, modified, recordCount,
+                    doctype, offsets, contextIds, contexts, contextDepths);
+        } catch (NoSuchFileException | EOFException e) {
+            // Missing, or cut off while it was written by an older version
+            return null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+
+/**
+ * Turns one record element into a value, see {@link XMLParallelReader}.
+ */
+@FunctionalInterface
+public interface XMLRecordMapper<T> {
+    /**
+     * Called with the reader on the START_ELEMENT of a record. The mapper may
+     * read any part of the record but not past its END_ELEMENT; what it
+     * leaves unread is skipped. Returning null drops the record.
+     */
+    T map(XMLReader reader) throws IOException;
+}
@@ -0,0 +1,30 @@
+package com.igerixx.Reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Supplies raw bytes to {@link XMLLexer}. The lexer scans {@link #buffer}
+ * from index 0 up to {@link #limit} and asks for more with {@link #fill(int)}.
+ */
+abstract class XMLSource implements Closeable {
+    static final int DEFAULT_BUFFER_SIZE = 16 * 1024; // 16 Kb
+
+    ByteBuffer buffer;
+    int limit = 0;
+    // Size of the first buffer of sources that allocate one
+    int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Drops the bytes before {@code keep}, moves the rest to the start of
+     * the buffer and loads new bytes after them. The buffer may be replaced,
+     * and grows when the kept bytes fill it.
+     *
+     * @return number of new bytes, or -1 if the input is exhausted
+     */
+    abstract int fill(int keep) throws IOException;
+
+    @Override
+    public void close() throws IOException {}
+}
@@ -0,0 +1,56 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads an {@link InputStream} into a reusable heap buffer. Bytes the lexer
+ * still needs are carried over to the start of the buffer, which doubles
+ * when they fill it.
+ */
+class XMLStreamSource extends XMLSource {
+    private InputStream is;
+
+    XMLStreamSource(InputStream is) {
+        this.is = is;
+    }
+
+    InputStream getInputStream() {
+        return is;
+    }
+
+    /**
+     * Switches to another stream, keeping the buffer.
+     */
+    void reset(InputStream is) {
+        this.is = is;
+        limit = 0;
+    }
+
+    @Override
+    int fill(int keep) throws IOException {
+        if (buffer == null)
+            buffer = ByteBuffer.allocate(bufferSize);
+
+        byte[] array = buffer.array();
+        int kept = limit - keep;
+        if (kept == array.length) {
+            byte[] grown = new byte[array.length * 2];
+            System.arraycopy(array, keep, grown, 0, kept);
+            buffer = ByteBuffer.wrap(grown);
+            array = grown;
+        } else {
+            System.arraycopy(array, keep, array, 0, kept);
+        }
+
+        // Whatever is available, so events that already arrived on a socket
+        // or pipe are not held back until the buffer is full
+        int read;
+        do {
+            read = is.read(array, kept, array.length - kept);
+        } while (read == 0);
+        limit = read == -1 ? kept : kept + read;
+        return read;
+    }
+}
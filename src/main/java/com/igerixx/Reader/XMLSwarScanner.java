@@ -0,0 +1,89 @@
+package com.igerixx.Reader;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Scans 8 bytes at a time with plain long arithmetic. Words are read little
+ * endian, so the lowest flagged byte of a mask is the first in the buffer;
+ * borrows of the zero byte test can only flag bytes after a real match.
+ */
+final class XMLSwarScanner extends XMLByteScanner {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LT = ONES * '<';
+    private static final long AMP = ONES * '&';
+    private static final long GT = ONES * '>';
+    private static final long QUOT = ONES * '"';
+    private static final long APOS = ONES * '\'';
+    // 32 - whitespace
+    private static final long SPACES = ONES * 32;
+
+    @Override
+    int findContentEnd(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = (long) LONGS.get(buffer, i);
+            long mask = zeroBytes(word ^ LT) | zeroBytes(word ^ AMP) | ((word - SPACES) & ~word & HIGH_BITS);
+            if (mask != 0) return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+        }
+        for (; i < to; i++) {
+            int character = buffer.get(i) & 0xFF;
+            if (character == '<' || character == '&' || character < 32) return i;
+        }
+        return to;
+    }
+
+    @Override
+    int findAttributeEnd(ByteBuffer buffer, int from, int to, int quote) {
+        long quotes = ONES * quote;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = (long) LONGS.get(buffer, i);
+            long mask = zeroBytes(word ^ quotes) | zeroBytes(word ^ AMP);
+            if (mask != 0) return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+        }
+        for (; i < to; i++) {
+            int character = buffer.get(i) & 0xFF;
+            if (character == quote || character == '&') return i;
+        }
+        return to;
+    }
+
+    @Override
+    int findTagEnd(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = (long) LONGS.get(buffer, i);
+            long mask = zeroBytes(word ^ GT) | zeroBytes(word ^ QUOT) | zeroBytes(word ^ APOS);
+            if (mask != 0) return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+        }
+        for (; i < to; i++) {
+            int character = buffer.get(i) & 0xFF;
+            if (character == '>' || character == '"' || character == '\'') return i;
+        }
+        return to;
+    }
+
+    @Override
+    int indexOf(ByteBuffer buffer, int from, int to, int b) {
+        long pattern = ONES * b;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long mask = zeroBytes((long) LONGS.get(buffer, i) ^ pattern);
+            if (mask != 0) return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+        }
+        for (; i < to; i++) {
+            if ((buffer.get(i) & 0xFF) == b) return i;
+        }
+        return to;
+    }
+
+    // Sets the high bit of every zero byte
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+}
@@ -0,0 +1,142 @@
+package com.igerixx.Reader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns element and attribute names straight from UTF-8 bytes and gives
+ * every distinct name a small integer id. Ids are dense and start at 0, so
+ * consumers can switch on them or index arrays with them.
+ * <p>
+ * Each reader creates its own table, but one table can be shared by many
+ * readers, also on different threads, so ids stay the same across them.
+ * Lookups of known names take no lock and allocate nothing, only adding a
+ * new name is synchronized.
+ */
+public final class XMLSymbolTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final class State {
+        // Open addressing table of id + 1, 0 marks an empty slot
+        final int[] slots;
+        final int mask;
+        final byte[][] names;
+        final String[] strings;
+        final int[] hashes;
+
+        State(int capacity) {
+            slots = new int[capacity];
+            mask = capacity - 1;
+            names = new byte[capacity / 2][];
+            strings = new String[capacity / 2];
+            hashes = new int[capacity / 2];
+        }
+    }
+
+    private volatile State state = new State(INITIAL_CAPACITY);
+    private volatile int size = 0;
+
+    /**
+     * Returns the id of the name held in {@code bytes[offset..offset+length)},
+     * adding it to the table if it is new.
+     */
+    public int intern(byte[] bytes, int offset, int length) {
+        int hash = hash(bytes, offset, length);
+        int id = find(state, bytes, offset, length, hash);
+        return id != -1 ? id : add(bytes, offset, length, hash);
+    }
+
+    public int intern(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return intern(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns the id of {@code name} without adding it, or -1 if it is unknown.
+     */
+    public int getId(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes, 0, bytes.length);
+        int id = find(state, bytes, 0, bytes.length, hash);
+        if (id != -1) return id;
+        synchronized (this) {
+            return find(state, bytes, 0, bytes.length, hash);
+        }
+    }
+
+    public String getName(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException(id);
+        return state.strings[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int find(State state, byte[] bytes, int offset, int length, int hash) {
+        int[] slots = state.slots;
+        int i = hash & state.mask;
+
+        while (true) {
+            int slot = slots[i];
+            if (slot == 0) return -1;
+
+            int id = slot - 1;
+            // A slot can be seen before the name it points to is published,
+            // such a name is looked up again under the lock
+            if (id >= size) return -1;
+
+            byte[] name = state.names[id];
+            if (state.hashes[id] == hash
+                    && Arrays.equals(name, 0, name.length, bytes, offset, offset + length))
+                return id;
+
+            i = (i + 1) & state.mask;
+        }
+    }
+
+    private synchronized int add(byte[] bytes, int offset, int length, int hash) {
+        State current = state;
+        int id = find(current, bytes, offset, length, hash);
+        if (id != -1) return id;
+
+        id = size;
+        if (id == current.names.length) {
+            current = grow(current);
+            state = current;
+        }
+
+        current.names[id] = Arrays.copyOfRange(bytes, offset, offset + length);
+        current.strings[id] = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        current.hashes[id] = hash;
+        size = id + 1;
+        current.slots[freeSlot(current, hash)] = id + 1;
+        return id;
+    }
+
+    private State grow(State current) {
+        State grown = new State(current.slots.length * 2);
+        int count = size;
+        System.arraycopy(current.names, 0, grown.names, 0, count);
+        System.arraycopy(current.strings, 0, grown.strings, 0, count);
+        System.arraycopy(current.hashes, 0, grown.hashes, 0, count);
+        for (int id = 0; id < count; id++)
+            grown.slots[freeSlot(grown, grown.hashes[id])] = id + 1;
+        return grown;
+    }
+
+    private static int freeSlot(State state, int hash) {
+        int i = hash & state.mask;
+        while (state.slots[i] != 0) i = (i + 1) & state.mask;
+        return i;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++)
+            hash = 31 * hash + bytes[i];
+        // Spread the bits, the low ones pick the slot
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,153 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Caches documents that are parsed again and again as pre-tokenized event
+ * tapes on local disk. The first {@link #open(Path)} of a file parses it
+ * once and records its events; later opens replay the tape through the
+ * same {@link XMLCursor} API without lexing.
+ * <p>
+ * Tapes are keyed by the absolute path, size and modification time of the
+ * file and by the reader settings, so a changed file is parsed again. Each
+ * open marks its tape as recently used; once the tapes take more than the
+ * size limit, the least recently used ones are deleted.
+ * <p>
+ * Opens may run on several threads and processes at once, tapes are
+ * written to a temporary file and moved into place.
+ */
+public class XMLTapeCache {
+    private static final String SUFFIX = ".tape";
+
+    private final Path directory;
+    private final long maxSize;
+    private boolean trimText = true;
+    private boolean ignoreComments = false;
+    private boolean namespaceAware = false;
+
+    /**
+     * @param maxSize total size of the tapes in bytes the cache keeps
+     */
+    public XMLTapeCache(Path directory, long maxSize) throws IOException {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("Max size must not be negative");
+        this.directory = Files.createDirectories(directory);
+        this.maxSize = maxSize;
+    }
+
+    public void trimText(boolean trim) {
+        this.trimText = trim;
+    }
+
+    public void setIgnoreComments(boolean ignoreComments) {
+        this.ignoreComments = ignoreComments;
+    }
+
+    public void setNamespaceAware(boolean namespaceAware) {
+        this.namespaceAware = namespaceAware;
+    }
+
+    /**
+     * Returns a cursor over the events of {@code document}, replayed from
+     * its tape if there is a current one.
+     */
+    public XMLCursor open(Path document) throws IOException {
+        Path absolute = document.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+        String key = absolute + "|" + attributes.size() + "|" + attributes.lastModifiedTime().toMillis()
+                + "|" + trimText + "|" + ignoreComments + "|" + namespaceAware;
+        Path tape = directory.resolve(hash(key) + SUFFIX);
+
+        XMLTapeReader reader = Files.exists(tape) ? XMLTapeReader.open(tape, key) : null;
+        if (reader != null) {
+            touch(tape);
+            return reader;
+        }
+
+        // --- Record a new tape ---
+        Path temporary = Files.createTempFile(directory, "record", ".tmp");
+        try (XMLReader recorder = new XMLReader(absolute)) {
+            recorder.trimText(trimText);
+            recorder.setIgnoreComments(ignoreComments);
+            recorder.setNamespaceAware(namespaceAware);
+            XMLTapeWriter.record(recorder, temporary, key);
+            Files.move(temporary, tape, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        evict(tape);
+        reader = XMLTapeReader.open(tape, key);
+        if (reader != null) return reader;
+
+        // Tapes over 2 Gb cannot be mapped, or the tape was replaced meanwhile
+        XMLReader fallback = new XMLReader(absolute);
+        fallback.trimText(trimText);
+        fallback.setIgnoreComments(ignoreComments);
+        fallback.setNamespaceAware(namespaceAware);
+        return fallback;
+    }
+
+    private record Entry(Path tape, FileTime lastUsed, long size) {}
+
+    /**
+     * Deletes the least recently used tapes, except {@code keep}, until the
+     * rest fit in the size limit.
+     */
+    private void evict(Path keep) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path tape : stream) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(tape, BasicFileAttributes.class);
+                    entries.add(new Entry(tape, attributes.lastModifiedTime(), attributes.size()));
+                    total += attributes.size();
+                } catch (IOException e) {
+                    // Deleted by another open meanwhile
+                }
+            }
+        }
+        if (total <= maxSize) return;
+
+        entries.sort(Comparator.comparing(Entry::lastUsed));
+        for (Entry entry : entries) {
+            if (total <= maxSize) break;
+            if (entry.tape().equals(keep)) continue;
+            try {
+                Files.deleteIfExists(entry.tape());
+                total -= entry.size();
+            } catch (IOException e) {
+                // Still mapped on platforms that forbid deleting it, try next time
+            }
+        }
+    }
+
+    private static void touch(Path tape) {
+        try {
+            Files.setLastModifiedTime(tape, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only the eviction order suffers
+        }
+    }
+
+    // 64-bit FNV-1a, collisions are caught by the key stored in the tape
+    private static String hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return Long.toHexString(hash);
+    }
+}
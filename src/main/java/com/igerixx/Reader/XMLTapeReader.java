@@ -0,0 +1,210 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays a tape written by {@link XMLTapeWriter}. The tape is memory-mapped
+ * and every {@link #next()} only reads the fixed fields of a record; text
+ * and attribute values are decoded when they are asked for.
+ */
+class XMLTapeReader implements XMLCursor {
+    private final ByteBuffer tape;
+    private final int namesOffset;
+    private final XMLSymbolTable symbols = new XMLSymbolTable();
+    // Symbol table id by tape name id
+    private final int[] nameIds;
+
+    // --- Current record ---
+    private int record = -1;
+    private int recordLength = 0;
+    private int event;
+    private int depth;
+    private int nameId = -1;
+    private int textLength;
+    private int attributeCount;
+    private byte[] bytes = new byte[256];
+    private String text;
+    private char[] textChars = new char[0];
+    private int textCharsLength = -1;
+
+    /**
+     * @return the reader, or null if {@code path} is not a tape of {@code key}
+     */
+    static XMLTapeReader open(Path path, String key) throws IOException {
+        ByteBuffer tape;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) return null;
+            tape = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (tape.limit() < 20 + keyBytes.length
+                || tape.getInt(0) != XMLTapeWriter.MAGIC
+                || tape.getInt(4) != XMLTapeWriter.VERSION
+                || tape.getInt(16) != keyBytes.length
+                || !tape.slice(20, keyBytes.length).equals(ByteBuffer.wrap(keyBytes)))
+            return null;
+
+        long namesOffset = tape.getLong(8);
+        // 0 until the tape was completely written
+        if (namesOffset <= 0 || namesOffset + 4 > tape.limit()) return null;
+        return new XMLTapeReader(tape, (int) namesOffset, 20 + keyBytes.length);
+    }
+
+    private XMLTapeReader(ByteBuffer tape, int namesOffset, int firstRecord) {
+        this.tape = tape;
+        this.namesOffset = namesOffset;
+        this.record = firstRecord;
+
+        int position = namesOffset;
+        int count = tape.getInt(position);
+        position += 4;
+        nameIds = new int[count];
+        for (int id = 0; id < count; id++) {
+            int length = tape.getInt(position);
+            position += 4;
+            nameIds[id] = symbols.intern(bytes(position, length), 0, length);
+            position += length;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return event != XMLReaderConstants.END_DOCUMENT;
+    }
+
+    @Override
+    public int next() throws IOException {
+        if (event == XMLReaderConstants.END_DOCUMENT) return event;
+
+        record += recordLength;
+        if (record + XMLTapeWriter.RECORD_HEADER > namesOffset)
+            throw new IOException("Tape is corrupted");
+        recordLength = tape.getInt(record);
+        event = tape.get(record + 4);
+        depth = tape.getInt(record + 5);
+        int tapeNameId = tape.getInt(record + 9);
+        nameId = tapeNameId == -1 ? -1 : nameIds[tapeNameId];
+        textLength = tape.getInt(record + 13);
+        attributeCount = tape.getInt(record + 17);
+        text = null;
+        textCharsLength = -1;
+        return event;
+    }
+
+    @Override
+    public int getEventType() {
+        return event;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String getLocalName() {
+        return nameId == -1 ? "" : symbols.getName(nameId);
+    }
+
+    @Override
+    public int getNameId() {
+        return nameId;
+    }
+
+    @Override
+    public XMLSymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return attributeCount;
+    }
+
+    @Override
+    public String getAttributeLocalName(int index) {
+        return symbols.getName(getAttributeNameId(index));
+    }
+
+    @Override
+    public int getAttributeNameId(int index) {
+        return nameIds[tape.getInt(attribute(index))];
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        int entry = attribute(index);
+        int length = tape.getInt(entry + 8);
+        return new String(bytes(record + tape.getInt(entry + 4), length), 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getAttributeIndex(int nameId) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (getAttributeNameId(i) == nameId) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String getText() {
+        if (text == null)
+            text = new String(bytes(textStart(), textLength), 0, textLength, StandardCharsets.UTF_8);
+        return text;
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        decodeText();
+        return textChars;
+    }
+
+    @Override
+    public int getTextStart() {
+        return 0;
+    }
+
+    @Override
+    public int getTextLength() {
+        decodeText();
+        return textCharsLength;
+    }
+
+    @Override
+    public void close() {}
+
+    private int attribute(int index) {
+        if (index < 0 || index >= attributeCount)
+            throw new IndexOutOfBoundsException(index);
+        return record + XMLTapeWriter.RECORD_HEADER + index * XMLTapeWriter.ATTRIBUTE_ENTRY;
+    }
+
+    private int textStart() {
+        return record + XMLTapeWriter.RECORD_HEADER + attributeCount * XMLTapeWriter.ATTRIBUTE_ENTRY;
+    }
+
+    /**
+     * Copies bytes of the tape into the reusable {@link #bytes} array.
+     */
+    private byte[] bytes(int position, int length) {
+        if (bytes.length < length)
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        tape.get(position, bytes, 0, length);
+        return bytes;
+    }
+
+    private void decodeText() {
+        if (textCharsLength != -1) return;
+        if (textChars.length < textLength)
+            textChars = new char[Math.max(textLength, textChars.length * 2)];
+        textCharsLength = XMLUtf8.decode(bytes(textStart(), textLength), 0, textLength, textChars);
+    }
+}
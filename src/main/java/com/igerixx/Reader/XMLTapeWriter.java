@@ -0,0 +1,106 @@
+package com.igerixx.Reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the events of a reader to a tape file that {@link XMLTapeReader}
+ * replays without lexing. All numbers are little-endian ints:
+ * <pre>
+ * header   magic "XMLT", version, offset of the names (long), key length, key UTF-8
+ * record   record length, type (byte), depth, name id, text length, attribute count,
+ *          attribute count * (name id, value offset in the record, value length),
+ *          text UTF-8, attribute values UTF-8
+ * names    count, count * (length, UTF-8)
+ * </pre>
+ * Name ids are those of the recording reader's symbol table, which the
+ * names section lists in id order. The last record is END_DOCUMENT.
+ */
+final class XMLTapeWriter {
+    static final int MAGIC = 0x544C4D58; // "XMLT" little-endian
+    static final int VERSION = 1;
+    // Record fields before the attribute table
+    static final int RECORD_HEADER = 4 + 1 + 4 + 4 + 4 + 4;
+    static final int ATTRIBUTE_ENTRY = 12;
+
+    private XMLTapeWriter() {}
+
+    /**
+     * Reads the rest of the document from {@code reader} into {@code tape}.
+     * The reader must be on its own symbol table.
+     */
+    static void record(XMLReader reader, Path tape, String key) throws IOException {
+        try (FileChannel channel = FileChannel.open(tape, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer out = ByteBuffer.allocate(1024 * 1024).order(ByteOrder.LITTLE_ENDIAN); // 1 Mb
+
+            // --- Header, the names offset is patched at the end ---
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            out.putInt(MAGIC).putInt(VERSION).putLong(0).putInt(keyBytes.length).put(keyBytes);
+
+            // --- Records ---
+            int event;
+            do {
+                event = reader.next();
+                int attributeCount = reader.getAttributeCount();
+                int textLength = reader.getTextByteLength();
+                int valuesLength = 0;
+                for (int i = 0; i < attributeCount; i++) valuesLength += reader.getAttributeValueLength(i);
+                int recordLength = RECORD_HEADER + attributeCount * ATTRIBUTE_ENTRY + textLength + valuesLength;
+                out = ensure(channel, out, recordLength);
+
+                out.putInt(recordLength).put((byte) event).putInt(reader.getDepth()).putInt(reader.getNameId())
+                        .putInt(textLength).putInt(attributeCount);
+                int valueOffset = RECORD_HEADER + attributeCount * ATTRIBUTE_ENTRY + textLength;
+                for (int i = 0; i < attributeCount; i++) {
+                    int length = reader.getAttributeValueLength(i);
+                    out.putInt(reader.getAttributeNameId(i)).putInt(valueOffset).putInt(length);
+                    valueOffset += length;
+                }
+                if (textLength > 0) out.put(reader.getTextBytes(), 0, textLength);
+                byte[] values = reader.getAttributeValueBytes();
+                for (int i = 0; i < attributeCount; i++)
+                    out.put(values, reader.getAttributeValueStart(i), reader.getAttributeValueLength(i));
+            } while (event != XMLReaderConstants.END_DOCUMENT);
+
+            // --- Names ---
+            flush(channel, out);
+            long namesOffset = channel.position();
+            XMLSymbolTable symbols = reader.getSymbolTable();
+            int count = symbols.size();
+            out = ensure(channel, out, 4).putInt(count);
+            for (int id = 0; id < count; id++) {
+                byte[] name = symbols.getName(id).getBytes(StandardCharsets.UTF_8);
+                out = ensure(channel, out, 4 + name.length);
+                out.putInt(name.length).put(name);
+            }
+            flush(channel, out);
+
+            out.clear();
+            out.putLong(namesOffset).flip();
+            channel.write(out, 8);
+        }
+    }
+
+    /**
+     * Makes room for {@code length} more bytes, writing out what is buffered
+     * and growing the buffer for records larger than it.
+     */
+    private static ByteBuffer ensure(FileChannel channel, ByteBuffer out, int length) throws IOException {
+        if (out.remaining() >= length) return out;
+        flush(channel, out);
+        if (out.capacity() >= length) return out;
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) channel.write(out);
+        out.clear();
+    }
+}
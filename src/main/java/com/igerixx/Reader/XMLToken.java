@@ -50,6 +50,18 @@ public class XMLToken {
         this.length = length;
     }
 
+    public byte[] getStringBuffer() {
+        return stringBuffer;
+    }
+
+    public char[] getCharStringBuffer() {
+        return charStringBuffer;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
     public String getValue() {
         if (stringBuffer != null)
             return new String(stringBuffer, 0, length, StandardCharsets.UTF_8);
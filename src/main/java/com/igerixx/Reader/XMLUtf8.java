@@ -0,0 +1,84 @@
+package com.igerixx.Reader;
+
+/**
+ * UTF-8 to UTF-16 decoding into caller supplied arrays, so token bytes can
+ * be turned into characters without allocating. Malformed sequences
+ * become U+FFFD.
+ */
+final class XMLUtf8 {
+    private XMLUtf8() {}
+
+    /**
+     * Decodes {@code length} bytes into {@code dst}, which must hold at least
+     * {@code length} chars, and returns the number of chars written.
+     */
+    static int decode(byte[] src, int offset, int length, char[] dst) {
+        int end = offset + length;
+        int i = offset;
+        int charIndex = 0;
+
+        while (i < end) {
+            int b = src[i++];
+
+            // ASCII
+            if (b >= 0) {
+                dst[charIndex++] = (char) b;
+                continue;
+            }
+
+            b &= 0xFF;
+            int codePoint;
+            int extra;
+            if (b >= 0xF0 && b <= 0xF4) {
+                codePoint = b & 0x07;
+                extra = 3;
+            } else if (b >= 0xE0) {
+                codePoint = b & 0x0F;
+                extra = b <= 0xEF ? 2 : -1;
+            } else if (b >= 0xC2) {
+                codePoint = b & 0x1F;
+                extra = 1;
+            } else {
+                codePoint = 0;
+                extra = -1;
+            }
+
+            if (extra < 0 || i + extra > end) {
+                dst[charIndex++] = '\uFFFD';
+                continue;
+            }
+
+            boolean malformed = false;
+            for (int k = 0; k < extra; k++) {
+                int next = src[i + k];
+                if ((next & 0xC0) != 0x80) {
+                    malformed = true;
+                    break;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+
+            // Overlong forms, surrogates and code points past U+10FFFF
+            if (!malformed && extra >= 2) {
+                malformed = extra == 2
+                        ? codePoint < 0x800 || (codePoint >= 0xD800 && codePoint <= 0xDFFF)
+                        : codePoint < 0x10000 || codePoint > 0x10FFFF;
+            }
+
+            if (malformed) {
+                dst[charIndex++] = '\uFFFD';
+                continue;
+            }
+            i += extra;
+
+            if (codePoint >= 0x10000) {
+                dst[charIndex++] = Character.highSurrogate(codePoint);
+                dst[charIndex++] = Character.lowSurrogate(codePoint);
+            } else {
+                dst[charIndex++] = (char) codePoint;
+            }
+        }
+
+        return charIndex;
+    }
+}
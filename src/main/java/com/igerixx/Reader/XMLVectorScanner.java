@@ -0,0 +1,90 @@
+package com.igerixx.Reader;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Scans heap buffers with the preferred vector width of the CPU. Mapped and
+ * direct buffers, and the tail shorter than a vector, go to the SWAR scanner.
+ * Created reflectively by {@link XMLByteScanner} so that this class is only
+ * linked when {@code jdk.incubator.vector} is present.
+ */
+final class XMLVectorScanner extends XMLByteScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private final XMLByteScanner fallback;
+
+    XMLVectorScanner(XMLByteScanner fallback) {
+        // Narrow vectors are no faster than SWAR on long words
+        if (SPECIES.length() < 16)
+            throw new IllegalStateException("Vector width is " + SPECIES.length() + " bytes");
+        this.fallback = fallback;
+    }
+
+    @Override
+    int findContentEnd(ByteBuffer buffer, int from, int to) {
+        if (to - from < SPECIES.length() || !buffer.hasArray()) return fallback.findContentEnd(buffer, from, to);
+
+        byte[] array = buffer.array();
+        int offset = buffer.arrayOffset();
+        int i = from;
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            ByteVector vector = ByteVector.fromArray(SPECIES, array, offset + i);
+            // 32 - whitespace
+            VectorMask<Byte> mask = vector.eq((byte) '<')
+                    .or(vector.eq((byte) '&'))
+                    .or(vector.compare(VectorOperators.UNSIGNED_LT, (byte) 32));
+            if (mask.anyTrue()) return i + mask.firstTrue();
+        }
+        return fallback.findContentEnd(buffer, i, to);
+    }
+
+    @Override
+    int findAttributeEnd(ByteBuffer buffer, int from, int to, int quote) {
+        if (to - from < SPECIES.length() || !buffer.hasArray()) return fallback.findAttributeEnd(buffer, from, to, quote);
+
+        byte[] array = buffer.array();
+        int offset = buffer.arrayOffset();
+        int i = from;
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            ByteVector vector = ByteVector.fromArray(SPECIES, array, offset + i);
+            VectorMask<Byte> mask = vector.eq((byte) quote).or(vector.eq((byte) '&'));
+            if (mask.anyTrue()) return i + mask.firstTrue();
+        }
+        return fallback.findAttributeEnd(buffer, i, to, quote);
+    }
+
+    @Override
+    int findTagEnd(ByteBuffer buffer, int from, int to) {
+        if (to - from < SPECIES.length() || !buffer.hasArray()) return fallback.findTagEnd(buffer, from, to);
+
+        byte[] array = buffer.array();
+        int offset = buffer.arrayOffset();
+        int i = from;
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            ByteVector vector = ByteVector.fromArray(SPECIES, array, offset + i);
+            VectorMask<Byte> mask = vector.eq((byte) '>')
+                    .or(vector.eq((byte) '"'))
+                    .or(vector.eq((byte) '\''));
+            if (mask.anyTrue()) return i + mask.firstTrue();
+        }
+        return fallback.findTagEnd(buffer, i, to);
+    }
+
+    @Override
+    int indexOf(ByteBuffer buffer, int from, int to, int b) {
+        if (to - from < SPECIES.length() || !buffer.hasArray()) return fallback.indexOf(buffer, from, to, b);
+
+        byte[] array = buffer.array();
+        int offset = buffer.arrayOffset();
+        int i = from;
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            VectorMask<Byte> mask = ByteVector.fromArray(SPECIES, array, offset + i).eq((byte) b);
+            if (mask.anyTrue()) return i + mask.firstTrue();
+        }
+        return fallback.indexOf(buffer, i, to, b);
+    }
+}
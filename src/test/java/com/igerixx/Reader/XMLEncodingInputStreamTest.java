@@ -0,0 +1,66 @@
+package com.igerixx.Reader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Guards re-encoding to UTF-8 when the space passed to a read is smaller
+ * than the UTF-8 form of the next char.
+ */
+class XMLEncodingInputStreamTest {
+    private static final String TEXT = "a\u00e9\u20ac\uD83D\uDE00b";
+
+    @Test
+    void readsCharsLongerThanTheSpaceGiven() throws Exception {
+        byte[] expected = TEXT.getBytes(StandardCharsets.UTF_8);
+        for (int length = 1; length <= 3; length++) {
+            XMLEncodingInputStream in = new XMLEncodingInputStream(new StringReader(TEXT));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[length];
+            int read;
+            while ((read = in.read(buffer, 0, length)) != -1) {
+                assertTrue(read > 0, "read returned 0");
+                out.write(buffer, 0, read);
+            }
+            assertArrayEquals(expected, out.toByteArray());
+        }
+    }
+
+    @Test
+    void readsSingleBytes() throws Exception {
+        byte[] expected = TEXT.getBytes(StandardCharsets.UTF_8);
+        XMLEncodingInputStream in = new XMLEncodingInputStream(new StringReader(TEXT));
+        for (byte b : expected) assertEquals(b & 0xFF, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void parsesMultibyteCharsAtTheBufferEdge() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            // A long start tag is kept in the buffer while it fills, so the
+            // space left at the edge gets smaller than the next char
+            for (int shift = 0; shift < 8; shift++) {
+                String value = "x".repeat(shift) + "\u20ac".repeat(16 * 1024) + TEXT;
+                String document = "<root a=\"" + value + "\">" + TEXT + "</root>";
+                try (XMLReader reader = new XMLReader(
+                        new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_16)), StandardCharsets.UTF_16)) {
+                    reader.next();
+                    assertEquals(XMLReaderConstants.START_ELEMENT, reader.next());
+                    assertEquals(value, reader.getAttributeValue(0));
+                    assertEquals(XMLReaderConstants.CHARACTERS, reader.next());
+                    assertEquals(TEXT, reader.getText());
+                }
+            }
+        });
+    }
+}
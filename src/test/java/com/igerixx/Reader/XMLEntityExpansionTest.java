@@ -0,0 +1,56 @@
+package com.igerixx.Reader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Guards the limit on the bytes entity references add to a document.
+ */
+class XMLEntityExpansionTest {
+
+    @Test
+    void rejectsEntitiesThatExpandEachOther() {
+        StringBuilder document = new StringBuilder("<!DOCTYPE lolz [<!ENTITY l0 \"lollollol\">");
+        for (int i = 1; i <= 6; i++) {
+            document.append("<!ENTITY l").append(i).append(" \"");
+            document.append(("&l" + (i - 1) + ";").repeat(10)).append("\">");
+        }
+        document.append("]><lolz>").append("&l6;".repeat(200)).append("</lolz>");
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (XMLReader reader = new XMLReader(document)) {
+                assertThrows(IOException.class, () -> {
+                    while (reader.hasNext()) reader.next();
+                });
+            }
+        });
+    }
+
+    @Test
+    void expandsUpToTheLimit() throws IOException {
+        String document = "<!DOCTYPE r [<!ENTITY e \"0123456789\">]><r>&e;&e;&amp;&#233;</r>";
+
+        try (XMLReader reader = new XMLReader(document)) {
+            // Each &e; adds 10 - 3 bytes
+            reader.setEntityExpansionLimit(14);
+            reader.next();
+            reader.next();
+            reader.next();
+            assertEquals(XMLReaderConstants.CHARACTERS, reader.next());
+            assertEquals("01234567890123456789&\u00e9", reader.getText());
+        }
+
+        try (XMLReader reader = new XMLReader(document)) {
+            reader.setEntityExpansionLimit(13);
+            assertThrows(IOException.class, () -> {
+                while (reader.hasNext()) reader.next();
+            });
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.igerixx.Reader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Guards the steady state of {@link XMLReader#next()}: once the buffers
+ * have grown and the names are interned, reading events allocates nothing.
+ */
+class XMLReaderAllocationTest {
+    private static final int WARM_UP_EVENTS = 200_000;
+
+    @Test
+    void nextAllocatesNothingAfterWarmUp() throws Exception {
+        byte[] document = document();
+        // A first pass gets the hot path compiled, switching between
+        // compiled and interpreted code may allocate
+        allocatedBytesAfterWarmUp(new XMLReader(document));
+        assertEquals(0, allocatedBytesAfterWarmUp(new XMLReader(document)));
+    }
+
+    @Test
+    void nextAllocatesNothingAfterWarmUpOnStreams() throws Exception {
+        byte[] document = document();
+        allocatedBytesAfterWarmUp(new XMLReader(new ByteArrayInputStream(document)));
+        assertEquals(0, allocatedBytesAfterWarmUp(new XMLReader(new ByteArrayInputStream(document))));
+    }
+
+    /**
+     * Reads every event the way allocation-free consumers do, through ids,
+     * char arrays and attribute indexes, and returns the bytes allocated by
+     * this thread over the events after the first {@link #WARM_UP_EVENTS}.
+     */
+    private static long allocatedBytesAfterWarmUp(XMLReader reader) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        long events = 0;
+        long checksum = 0;
+        long before = 0;
+        long after = 0;
+        try (reader) {
+            while (reader.hasNext()) {
+                // Taken before each event, so the once per document work
+                // of END_DOCUMENT and close() is left out
+                if (events >= WARM_UP_EVENTS) after = threads.getThreadAllocatedBytes(thread);
+                int event = reader.next();
+                if (event == XMLReaderConstants.START_ELEMENT) {
+                    checksum += reader.getNameId();
+                    for (int i = 0; i < reader.getAttributeCount(); i++)
+                        checksum += reader.getAttributeNameId(i) + reader.getAttributeValueLength(i);
+                } else if (event == XMLReaderConstants.CHARACTERS) {
+                    checksum += reader.getTextCharacters().length + reader.getTextLength();
+                }
+                if (++events == WARM_UP_EVENTS) before = threads.getThreadAllocatedBytes(thread);
+            }
+        }
+
+        assumeTrue(checksum != 0);
+        assumeTrue(events > 2L * WARM_UP_EVENTS);
+        return after - before;
+    }
+
+    /**
+     * About 30 Mb of records with attributes, entities, comments and CDATA.
+     */
+    private static byte[] document() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n<catalog>\n");
+        for (int i = 0; i < 150_000; i++) {
+            xml.append("  <item id=\"").append(i).append("\" lang=\"en\" note=\"a &amp; b\">\n")
+                    .append("    <title>Caf&#233; &lt;").append(i).append("&gt; &#x1F600;</title>\n")
+                    .append("    <!-- comment ").append(i).append(" -->\n")
+                    .append("    <price currency=\"EUR\">").append(i % 100).append(".50</price>\n")
+                    .append("    <data><![CDATA[raw <text> ").append(i).append("]]></data>\n")
+                    .append("    <empty/>\n")
+                    .append("  </item>\n");
+        }
+        return xml.append("</catalog>\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
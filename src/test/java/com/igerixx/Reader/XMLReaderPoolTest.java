@@ -0,0 +1,44 @@
+package com.igerixx.Reader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Guards that what one user changes on a pooled reader does not carry
+ * over to the next user.
+ */
+class XMLReaderPoolTest {
+    private static final byte[] DOCUMENT = "<r>&e;<!--c--></r>".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void acquiredReadersStartFromThePoolSettings() throws IOException {
+        XMLReaderPool pool = new XMLReaderPool(1);
+        pool.setIgnoreComments(true);
+
+        XMLReader first = pool.acquire(DOCUMENT);
+        first.declareEntity("e", "declared");
+        first.setIgnoreComments(false);
+        first.setMetricsEnabled(true);
+        first.setTokenBufferSize(16, 16);
+        first.setEntityExpansionLimit(0);
+        pool.release(first);
+
+        XMLReader second = pool.acquire(new ByteArrayInputStream(DOCUMENT));
+        assertSame(first, second);
+        assertThrows(IllegalStateException.class, second::getMetrics);
+        second.next();
+        second.next();
+        // The entity is no longer declared and the comment is ignored again
+        assertEquals(XMLReaderConstants.CHARACTERS, second.next());
+        assertEquals("&e;", second.getText());
+        assertEquals(XMLReaderConstants.END_ELEMENT, second.next());
+        pool.release(second);
+    }
+}